@@ -1,16 +1,25 @@
 package cn.wubo.loader.util;
 
+import cn.wubo.loader.util.class_loader.AsyncCompiler;
 import cn.wubo.loader.util.class_loader.DynamicClassLoader;
+import cn.wubo.loader.util.class_loader.IncrementalCompiler;
+import cn.wubo.loader.util.class_loader.JarArchive;
 import cn.wubo.loader.util.class_loader.JavaBuilder;
+import cn.wubo.loader.util.class_loader.JavaClassCache;
+import cn.wubo.loader.util.class_loader.JavaClassStore;
 import cn.wubo.loader.util.class_loader.JavaMemClass;
+import cn.wubo.loader.util.class_loader.ParallelCompiler;
 import cn.wubo.loader.util.exception.LoaderRuntimeException;
+import cn.wubo.loader.util.metrics.LoaderMetrics;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.File;
 import java.io.IOException;
-import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 public class LoaderUtils {
@@ -24,12 +33,43 @@ public class LoaderUtils {
     public static void compiler(String javaSourceCode, String fullClassName) {
         // 使用JavaBuilder编译Java源代码并获取内存中的类映射
         Map<String, JavaMemClass> javaMemClassMap = JavaBuilder.builder().compiler(javaSourceCode, fullClassName).getJavaMemClassMap();
-        // 获取动态类加载器实例
-        DynamicClassLoader classLoader = DynamicClassLoader.getInstance();
-        // 将编译后的类信息添加到类加载器中
-        for (Map.Entry<String, JavaMemClass> entry : javaMemClassMap.entrySet()) {
-            classLoader.addClassMap(entry.getKey(), entry.getValue().getBytes());
-        }
+        // 将编译结果添加到动态类加载器实例中，类定义时直接读取编译输出的直接内存
+        DynamicClassLoader.getInstance().addJavaMemClassMap(javaMemClassMap, false);
+    }
+
+    /**
+     * 在同一个编译任务中批量编译多个Java源代码，并一次性加载到内存中。
+     * 同一批次的源代码之间可以互相引用，任意一个源代码编译失败时整个批次都不会加载。
+     *
+     * @param sources 完全限定类名与Java源代码的映射
+     */
+    public static void compiler(Map<String, String> sources) {
+        // 使用JavaBuilder批量编译Java源代码并获取内存中的类映射
+        Map<String, JavaMemClass> javaMemClassMap = JavaBuilder.builder().compiler(sources).getJavaMemClassMap();
+        // 将编译结果添加到动态类加载器实例中，类定义时直接读取编译输出的直接内存
+        DynamicClassLoader.getInstance().addJavaMemClassMap(javaMemClassMap, false);
+    }
+
+    /**
+     * 并行编译多个Java源代码，并一次性加载到内存中。
+     * 互不引用的源代码会分成多个批次，在并行度为CPU核数的线程池中同时编译，适合启动时加载大量源代码的场景。
+     *
+     * @param sources 完全限定类名与Java源代码的映射
+     * @return 编译结果，包括编译后的类和各阶段耗时
+     */
+    public static ParallelCompiler.Result compilerParallel(Map<String, String> sources) {
+        return ParallelCompiler.getInstance().compiler(sources);
+    }
+
+    /**
+     * 增量编译Java源代码，只重新编译变化的源代码以及依赖它们的源代码。
+     * 增量编译的类加载在独立的动态类加载器中，需要通过loadIncremental方法获取。
+     *
+     * @param sources 新增或变化的完全限定类名与Java源代码的映射
+     * @return 实际重新编译的源代码对应的完全限定类名集合
+     */
+    public static Set<String> compilerIncremental(Map<String, String> sources) {
+        return IncrementalCompiler.getInstance().compiler(sources);
     }
 
     /**
@@ -48,10 +88,8 @@ public class LoaderUtils {
         Map<String, JavaMemClass> javaMemClassMap = JavaBuilder.builder().compiler(javaSourceCode, fullClassName).getJavaMemClassMap();
 
         try (DynamicClassLoader dynamicClassLoader = new DynamicClassLoader(Thread.currentThread().getContextClassLoader())) {
-            // 将内存中的类信息添加到自定义类加载器的类映射中。
-            for (Map.Entry<String, JavaMemClass> entry : javaMemClassMap.entrySet()) {
-                dynamicClassLoader.addClassMap(entry.getKey(), entry.getValue().getBytes());
-            }
+            // 将内存中的类信息添加到自定义类加载器的类映射中，类加载器关闭时会释放未定义的类，因此立即定义所有的类，包括内部类。
+            dynamicClassLoader.addJavaMemClassMap(javaMemClassMap, true);
             // 使用自定义类加载器加载指定的类。
             return dynamicClassLoader.loadClass(fullClassName);
         } catch (IOException | ClassNotFoundException e) {
@@ -60,6 +98,64 @@ public class LoaderUtils {
         }
     }
 
+    /**
+     * 异步编译Java源代码并加载到内存中，编译在后台线程中执行，调用方线程不会阻塞。
+     * 相同类名和源代码的请求在编译期间会合并为一次编译，所有请求得到同一个类。
+     *
+     * @param javaSourceCode Java源代码字符串。
+     * @param fullClassName  完全限定类名。
+     * @return 编译并加载后的类的Class对象，编译失败时以LoaderRuntimeException异常完成。
+     */
+    public static CompletableFuture<Class<?>> compilerAsync(String javaSourceCode, String fullClassName) {
+        return AsyncCompiler.getInstance().submit("compiler:" + JavaClassCache.key(fullClassName, javaSourceCode, null), () -> {
+            compiler(javaSourceCode, fullClassName);
+            return load(fullClassName);
+        });
+    }
+
+    /**
+     * 异步编译并加载Java源代码，编译结果加载到独立的类加载器中，与compilerOnce相同。
+     * 相同类名和源代码的请求在编译期间会合并为一次编译，所有请求得到同一个类。
+     *
+     * @param javaSourceCode Java源代码字符串。
+     * @param fullClassName  完整的类名，包括包名。
+     * @return 编译并加载后的类的Class对象，编译失败时以LoaderRuntimeException异常完成。
+     */
+    public static CompletableFuture<Class<?>> compilerOnceAsync(String javaSourceCode, String fullClassName) {
+        return AsyncCompiler.getInstance().submit("compilerOnce:" + JavaClassCache.key(fullClassName, javaSourceCode, null), () -> compilerOnce(javaSourceCode, fullClassName));
+    }
+
+    /**
+     * 热替换动态编译的类：编译结果和当前一代中添加的jar加载到新一代动态类加载器中，然后整体替换当前一代。
+     * 编译失败时不会替换当前一代，已经持有旧类的调用不受影响。
+     *
+     * @param sources 完全限定类名与Java源代码的映射，新一代中只包含这些源代码编译的类
+     * @return 新一代的动态类加载器
+     */
+    public static DynamicClassLoader redeploy(Map<String, String> sources) {
+        Map<String, JavaMemClass> javaMemClassMap = JavaBuilder.builder().compiler(sources).getJavaMemClassMap();
+        return DynamicClassLoader.swap(next -> {
+            // 在替换时读取当前一代的jar，同时进行的其他替换不会丢失
+            DynamicClassLoader current = DynamicClassLoader.getInstance();
+            for (URL url : current.getURLs()) {
+                next.addURL(url);
+            }
+            current.getJars().forEach(next::addJar);
+            next.addJavaMemClassMap(javaMemClassMap, false);
+        });
+    }
+
+    /**
+     * 在后台线程中热替换动态编译的类，与redeploy相同，编译和构建新一代期间调用方继续使用当前一代。
+     * 相同源代码的请求在构建期间会合并为一次。
+     *
+     * @param sources 完全限定类名与Java源代码的映射
+     * @return 新一代的动态类加载器，编译失败时以LoaderRuntimeException异常完成
+     */
+    public static CompletableFuture<DynamicClassLoader> redeployAsync(Map<String, String> sources) {
+        return AsyncCompiler.getInstance().submit("redeploy:" + JavaClassCache.key(sources, null), () -> redeploy(sources));
+    }
+
     /**
      * 通过类名加载类。
      *
@@ -67,29 +163,73 @@ public class LoaderUtils {
      * @return 加载的类。
      */
     public static Class<?> load(String fullClassName) {
+        long start = LoaderMetrics.start();
         try {
             // 获取动态类加载器实例并加载类
             DynamicClassLoader classLoader = DynamicClassLoader.getInstance();
-            return classLoader.loadClass(fullClassName);
+            Class<?> clazz = classLoader.loadClass(fullClassName);
+            LoaderMetrics.loaded(true, start);
+            return clazz;
         } catch (ClassNotFoundException e) {
+            LoaderMetrics.loaded(false, start);
             // 抛出运行时异常，携带错误信息
             throw new LoaderRuntimeException(e.getMessage(), e);
         }
     }
 
     /**
-     * 将JAR路径添加到类路径中。
+     * 加载通过compilerIncremental编译的类。
+     *
+     * @param fullClassName 完全限定类名。
+     * @return 当前一代中加载的类。
+     */
+    public static Class<?> loadIncremental(String fullClassName) {
+        return IncrementalCompiler.getInstance().load(fullClassName);
+    }
+
+    /**
+     * 将JAR路径添加到类路径中，路径中包含!/时添加嵌套的jar，例如app.jar!/BOOT-INF/lib/plugin.jar。
      *
      * @param jarPath JAR文件路径。
      */
     public static void addJarPath(String jarPath) {
-        try {
-            // 获取动态类加载器实例并添加JAR路径
-            DynamicClassLoader.getInstance().addURL(new URL("jar:file:" + new File(jarPath).getAbsolutePath() + "!/"));
-        } catch (MalformedURLException e) {
-            // 抛出运行时异常，携带错误信息
-            throw new LoaderRuntimeException(e.getMessage(), e);
-        }
+        // 通过内存映射打开jar并按包建立索引，添加到动态类加载器实例中
+        DynamicClassLoader.getInstance().addJar(JarArchive.open(jarPath));
+    }
+
+    /**
+     * 将内存中的JAR添加到类路径中，例如运行时上传的jar，不需要写入磁盘。
+     *
+     * @param jarName JAR的名称，用于资源的URL，例如plugin.jar
+     * @param bytes   JAR的内容
+     */
+    public static void addJarBytes(String jarName, byte[] bytes) {
+        DynamicClassLoader.getInstance().addJar(JarArchive.of(jarName, bytes));
+    }
+
+    /**
+     * 将内存中的JAR添加到类路径中，JAR的内容不会被复制，添加后不能再修改。
+     *
+     * @param jarName JAR的名称，用于资源的URL，例如plugin.jar
+     * @param buffer  JAR的内容，从当前位置到limit
+     */
+    public static void addJarBuffer(String jarName, ByteBuffer buffer) {
+        DynamicClassLoader.getInstance().addJar(JarArchive.of(jarName, buffer));
+    }
+
+    /**
+     * 开启编译结果的磁盘存储，并将存储中未过期的类直接加载到动态类加载器中。
+     * 恢复后的类直接通过load方法获取，不要再对同一个类调用compiler，否则会因为重复定义类而发生异常。
+     *
+     * @param directory 存储目录
+     * @return 恢复的类的数量
+     */
+    public static int enableStore(String directory) {
+        JavaClassStore oldStore = JavaClassStore.getInstance();
+        if (oldStore != null) oldStore.close();
+        JavaClassStore store = new JavaClassStore(Paths.get(directory));
+        JavaClassStore.setInstance(store);
+        return store.restore(DynamicClassLoader.getInstance());
     }
 
     /**
@@ -145,5 +285,5 @@ public class LoaderUtils {
     public static void clear() {
         DynamicClassLoader.clear();
     }
-}
 
+}
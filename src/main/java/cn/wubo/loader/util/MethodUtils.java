@@ -1,14 +1,17 @@
 package cn.wubo.loader.util;
 
+import cn.wubo.loader.util.aspect.AspectChain;
 import cn.wubo.loader.util.aspect.AspectHandler;
 import cn.wubo.loader.util.aspect.IAspect;
+import cn.wubo.loader.util.aspect.ProxyCache;
 import cn.wubo.loader.util.aspect.SimpleAspect;
 import cn.wubo.loader.util.exception.LoaderRuntimeException;
-import org.springframework.cglib.proxy.Enhancer;
+import cn.wubo.loader.util.method.InstanceCache;
+import cn.wubo.loader.util.method.InstanceProvider;
+import cn.wubo.loader.util.method.MethodResolver;
+import cn.wubo.loader.util.metrics.LoaderMetrics;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.Arrays;
 
 /**
  * 执行方法和代理切面工具类
@@ -19,7 +22,7 @@ public class MethodUtils {
     }
 
     /**
-     * 执行类中的方法
+     * 执行类中的方法，目标类的实例按照InstanceCache中配置的实例策略获取，默认每次调用创建新的实例
      *
      * @param clazz      目标类
      * @param methodName 目标方法名
@@ -27,15 +30,17 @@ public class MethodUtils {
      * @return 返回值，Object类型
      */
     public static Object invokeClass(Class<?> clazz, String methodName, Object... args) {
+        long start = LoaderMetrics.start();
+        InstanceProvider provider = InstanceCache.getProvider(clazz);
+        Object o = provider.acquire();  // 按实例策略获取目标类的实例对象
         try {
-            Object o = clazz.getConstructor().newInstance();  // 创建目标类的实例对象
-            Class<?>[] parameterTypes = Arrays.stream(args).map(Object::getClass).toList().toArray(new Class<?>[]{});  // 获取参数的类型
-            Method method = clazz.getDeclaredMethod(methodName, parameterTypes);  // 获取目标方法
-            method.setAccessible(true);  // 设置方法可访问
-            return method.invoke(o, args);  // 调用目标方法并返回结果
-        } catch (InstantiationException | IllegalAccessException | InvocationTargetException |
-                 NoSuchMethodException e) {
+            MethodResolver.Dispatch dispatch = MethodResolver.resolve(clazz, methodName, false, args);  // 根据参数解析目标方法
+            return dispatch.invoke(o, args);  // 调用目标方法并返回结果
+        } catch (InvocationTargetException | NoSuchMethodException e) {
             throw new LoaderRuntimeException(e.getMessage(), e);  // 抛出运行时异常
+        } finally {
+            provider.release(o);  // 归还实例
+            LoaderMetrics.invoked(clazz, methodName, start);
         }
     }
 
@@ -49,17 +54,16 @@ public class MethodUtils {
      * @return 返回值，泛型
      */
     public static <T, R> R invokeClass(T target, String methodName, Object... args) {
+        long start = LoaderMetrics.start();
         try {
-            // 获取参数类型数组
-            Class<?>[] parameterTypes = Arrays.stream(args).map(Object::getClass).toList().toArray(new Class<?>[]{});
-            // 获取目标对象对应方法的实例
-            Method method = target.getClass().getDeclaredMethod(methodName, parameterTypes);
-            // 设置方法可访问性
-            method.setAccessible(true);
+            // 根据参数解析目标对象对应的方法
+            MethodResolver.Dispatch dispatch = MethodResolver.resolve(target.getClass(), methodName, false, args);
             // 调用目标方法并返回结果
-            return (R) method.invoke(target, args);
-        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
+            return (R) dispatch.invoke(target, args);
+        } catch (InvocationTargetException | NoSuchMethodException e) {
             throw new LoaderRuntimeException(e.getMessage(), e);
+        } finally {
+            LoaderMetrics.invoked(target.getClass(), methodName, start);
         }
     }
 
@@ -86,14 +90,15 @@ public class MethodUtils {
      * @return 返回值, Object类型
      */
     public static Object invokeBeanReturnObject(String beanName, String methodName, Object... args) {
+        long start = LoaderMetrics.start();
+        Object obj = SpringContextUtils.getBean(beanName);
         try {
-            Object obj = SpringContextUtils.getBean(beanName);
-            Class<?>[] parameterTypes = Arrays.stream(args).map(Object::getClass).toList().toArray(new Class<?>[]{});
-            Method method = obj.getClass().getMethod(methodName, parameterTypes);
-            method.setAccessible(true);
-            return method.invoke(obj, args);
-        } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException e) {
+            MethodResolver.Dispatch dispatch = MethodResolver.resolve(obj.getClass(), methodName, true, args);
+            return dispatch.invoke(obj, args);
+        } catch (NoSuchMethodException | InvocationTargetException e) {
             throw new LoaderRuntimeException(e.getMessage(), e);
+        } finally {
+            LoaderMetrics.invoked(obj.getClass(), methodName, start);
         }
     }
 
@@ -126,17 +131,25 @@ public class MethodUtils {
 
 
     /**
-     * 使用切面代理对象
+     * 使用切面代理对象，同一个目标类的代理类只生成一次
      *
      * @param target       目标对象
      * @param aspectTarget 切面对象
      * @return 被代理的切面
      */
     public static <T, E extends IAspect> T proxy(T target, E aspectTarget) {
-        Enhancer enhancer = new Enhancer();
-        enhancer.setSuperclass(target.getClass());
-        enhancer.setCallback(new AspectHandler(target, aspectTarget));
-        return (T) enhancer.create();
+        return ProxyCache.newInstance(target, new AspectHandler(target, aspectTarget));
+    }
+
+    /**
+     * 使用切面链代理对象，每个方法只执行匹配的切面，没有匹配任何切面的方法直接调用目标对象
+     *
+     * @param target 目标对象
+     * @param chain  切面链
+     * @return 被代理的对象
+     */
+    public static <T> T proxy(T target, AspectChain chain) {
+        return ProxyCache.newInstance(target, chain);
     }
 
 }
@@ -1,9 +1,11 @@
 package cn.wubo.loader.util;
 
 import cn.wubo.loader.util.exception.LoaderRuntimeException;
+import cn.wubo.loader.util.metrics.LoaderMetrics;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.beans.factory.support.DefaultListableBeanFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.util.ClassUtils;
@@ -13,10 +15,12 @@ import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandl
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @Component(value = "loaderUtilSpringContextUtils")
-public class SpringContextUtils implements BeanFactoryAware {
+public class SpringContextUtils implements BeanFactoryAware, SmartInitializingSingleton {
 
     private static DefaultListableBeanFactory listableBeanFactory;
 
@@ -25,6 +29,14 @@ public class SpringContextUtils implements BeanFactoryAware {
         listableBeanFactory = (DefaultListableBeanFactory) beanFactory;
     }
 
+    /**
+     * 所有单例创建完成后，容器中存在MeterRegistry时开启编译、加载和调用的指标。
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        LoaderMetrics.bind(listableBeanFactory);
+    }
+
     /**
      * 注册一个单例bean。此方法为泛型方法，允许注册任何类型的单例对象。
      * 通过传入类类型，系统可以在运行时创建该类型的单例实例。
@@ -191,4 +203,19 @@ public class SpringContextUtils implements BeanFactoryAware {
     public static <T> Map<String, T> getBeans(Class<T> type) {
         return listableBeanFactory.getBeansOfType(type);
     }
+
+    /**
+     * 获取已经创建的所有单例，不会触发延迟初始化的bean的创建。
+     *
+     * @return bean名称与单例的映射，未在Spring容器中运行时返回空映射
+     */
+    public static Map<String, Object> getSingletons() {
+        if (listableBeanFactory == null) return Collections.emptyMap();
+        Map<String, Object> singletonMap = new LinkedHashMap<>();
+        for (String beanName : listableBeanFactory.getSingletonNames()) {
+            Object singleton = listableBeanFactory.getSingleton(beanName);
+            if (singleton != null) singletonMap.put(beanName, singleton);
+        }
+        return singletonMap;
+    }
 }
@@ -0,0 +1,136 @@
+package cn.wubo.loader.util.aspect;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 切面链，由多个带有方法匹配器的切面组成。
+ * 每个方法匹配的切面在代理某个类时计算一次，没有匹配任何切面的方法直接转发给目标对象。
+ */
+public class AspectChain {
+
+    private final MethodMatcher[] matchers;
+
+    private final IAspect[] aspects;
+
+    /**
+     * 每个类的方法与匹配的切面数组
+     */
+    private final ClassValue<Map<Method, IAspect[]>> planCache = new ClassValue<>() {
+        @Override
+        protected Map<Method, IAspect[]> computeValue(Class<?> type) {
+            return computePlan(type);
+        }
+    };
+
+    private AspectChain(List<MethodMatcher> matchers, List<IAspect> aspects) {
+        this.matchers = matchers.toArray(new MethodMatcher[0]);
+        this.aspects = aspects.toArray(new IAspect[0]);
+    }
+
+    /**
+     * 创建切面链构建器。
+     *
+     * @return 构建器
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 获取类中被至少一个切面匹配的方法，以及每个方法按添加顺序排列的切面。
+     *
+     * @param clazz 目标类
+     * @return 方法与切面数组的映射，不可修改
+     */
+    public Map<Method, IAspect[]> plan(Class<?> clazz) {
+        return planCache.get(clazz);
+    }
+
+    private Map<Method, IAspect[]> computePlan(Class<?> clazz) {
+        Map<Method, IAspect[]> plan = new HashMap<>();
+        for (Method method : interceptableMethods(clazz)) {
+            List<IAspect> matched = new ArrayList<>(aspects.length);
+            for (int i = 0; i < aspects.length; i++) {
+                if (matchers[i].matches(method)) matched.add(aspects[i]);
+            }
+            if (!matched.isEmpty()) plan.put(method, matched.toArray(new IAspect[0]));
+        }
+        return Collections.unmodifiableMap(plan);
+    }
+
+    /**
+     * 获取CGLIB可以拦截的方法，即非static、非private、非final的方法，子类中重写的方法优先。
+     */
+    private static List<Method> interceptableMethods(Class<?> clazz) {
+        Map<List<Object>, Method> methodMap = new LinkedHashMap<>();
+        for (Class<?> current = clazz; current != null; current = current.getSuperclass()) {
+            for (Method method : current.getDeclaredMethods()) addMethod(methodMap, method);
+        }
+        // 接口中未被实现的默认方法
+        for (Method method : clazz.getMethods()) addMethod(methodMap, method);
+        List<Method> methods = new ArrayList<>();
+        for (Method method : methodMap.values()) {
+            int modifiers = method.getModifiers();
+            if (!Modifier.isStatic(modifiers) && !Modifier.isPrivate(modifiers) && !Modifier.isFinal(modifiers) && !method.isBridge())
+                methods.add(method);
+        }
+        return methods;
+    }
+
+    private static void addMethod(Map<List<Object>, Method> methodMap, Method method) {
+        List<Object> signature = new ArrayList<>();
+        signature.add(method.getName());
+        signature.addAll(Arrays.asList(method.getParameterTypes()));
+        methodMap.putIfAbsent(signature, method);
+    }
+
+    /**
+     * 切面链构建器
+     */
+    public static class Builder {
+
+        private final List<MethodMatcher> matchers = new ArrayList<>();
+
+        private final List<IAspect> aspects = new ArrayList<>();
+
+        /**
+         * 添加作用于Object中声明的方法以外的所有方法的切面。
+         *
+         * @param aspect 切面
+         * @return 构建器
+         */
+        public Builder aspect(IAspect aspect) {
+            return aspect(MethodMatcher.any(), aspect);
+        }
+
+        /**
+         * 添加作用于匹配的方法的切面。先添加的切面在外层，before先执行，after和afterThrow后执行。
+         *
+         * @param matcher 方法匹配器
+         * @param aspect  切面
+         * @return 构建器
+         */
+        public Builder aspect(MethodMatcher matcher, IAspect aspect) {
+            matchers.add(matcher);
+            aspects.add(aspect);
+            return this;
+        }
+
+        /**
+         * 构建切面链。
+         *
+         * @return 切面链
+         */
+        public AspectChain build() {
+            return new AspectChain(matchers, aspects);
+        }
+    }
+}
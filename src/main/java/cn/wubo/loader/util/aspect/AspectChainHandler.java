@@ -0,0 +1,56 @@
+package cn.wubo.loader.util.aspect;
+
+import org.springframework.cglib.proxy.MethodInterceptor;
+import org.springframework.cglib.proxy.MethodProxy;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+
+/**
+ * 切面链的拦截器，只处理至少匹配一个切面的方法。
+ * 每个方法的切面数组在创建代理时已经确定，调用时按数组下标依次执行，不创建迭代器。
+ */
+public class AspectChainHandler implements MethodInterceptor {
+
+    private final Object target;
+
+    private final Map<Method, IAspect[]> plan;
+
+    public AspectChainHandler(Object target, Map<Method, IAspect[]> plan) {
+        this.target = target;
+        this.plan = plan;
+    }
+
+    /**
+     * 依次执行切面的before，调用目标方法后按相反顺序执行after；目标方法或切面抛出异常时，
+     * 对已经执行了before的切面按相反顺序执行afterThrow。
+     *
+     * @param obj         代理对象
+     * @param method      被拦截的方法
+     * @param args        方法参数
+     * @param methodProxy 方法代理
+     * @return 方法执行结果
+     * @throws Throwable 方法执行过程中的异常
+     */
+    @Override
+    public Object intercept(Object obj, Method method, Object[] args, MethodProxy methodProxy) throws Throwable {
+        IAspect[] aspects = plan.get(method);
+        if (aspects == null) return methodProxy.invoke(target, args);
+        int entered = 0;
+        try {
+            for (; entered < aspects.length; entered++) {
+                aspects[entered].before(target, method, args);
+            }
+            Object result = methodProxy.invoke(target, args);
+            for (int i = aspects.length - 1; i >= 0; i--) {
+                aspects[i].after(target, method, args, result);
+            }
+            return result;
+        } catch (Throwable e) {
+            for (int i = entered - 1; i >= 0; i--) {
+                aspects[i].afterThrow(target, method, args, e);
+            }
+            throw e;
+        }
+    }
+}
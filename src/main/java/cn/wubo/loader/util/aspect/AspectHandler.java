@@ -1,6 +1,5 @@
 package cn.wubo.loader.util.aspect;
 
-
 import org.springframework.cglib.proxy.MethodInterceptor;
 import org.springframework.cglib.proxy.MethodProxy;
 
@@ -31,9 +30,9 @@ public class AspectHandler implements MethodInterceptor {
         Object result;
         try {
             aspect.before(target, method, args);  // 在执行被拦截的方法之前执行before增强操作
-            result = method.invoke(target, args); // 调用被拦截的方法并获取执行结果
+            result = methodProxy.invoke(target, args); // 通过MethodProxy直接调用目标对象的方法，不经过反射，目标方法抛出的异常原样抛出
             aspect.after(target, method, args, result);  // 在执行被拦截的方法之后执行after增强操作
-        } catch (Exception e) {
+        } catch (Throwable e) {
             aspect.afterThrow(target, method, args, e);  // 在抛出被拦截的方法时执行afterThrow增强操作
             throw e;  // 抛出被拦截的方法时抛出的异常
         }
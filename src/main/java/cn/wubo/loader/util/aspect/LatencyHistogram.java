@@ -0,0 +1,172 @@
+package cn.wubo.loader.util.aspect;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁的耗时直方图，记录纳秒耗时并计算百分位数。
+ * 桶按2的幂分段，每段均分为8个子桶，相对误差不超过12.5%；计数分条带写入，记录时不分配对象。
+ */
+public class LatencyHistogram {
+
+    /**
+     * 每个2的幂分段中子桶数量的位数
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    /**
+     * 条带之间的间隔，每个条带的统计项占用的long数量，取缓存行的整数倍
+     */
+    private static final int STRIPE_STRIDE = BUCKET_COUNT + 16;
+
+    /**
+     * 条带中耗时总和的位置
+     */
+    private static final int SUM_INDEX = BUCKET_COUNT;
+
+    /**
+     * 条带中最大耗时的位置
+     */
+    private static final int MAX_INDEX = BUCKET_COUNT + 1;
+
+    private final int stripeMask;
+
+    private final AtomicLongArray counts;
+
+    /**
+     * 构造函数，条带数量为CPU核数，最多8个，每个条带约占4KB。
+     */
+    public LatencyHistogram() {
+        this(Math.min(Runtime.getRuntime().availableProcessors(), 8));
+    }
+
+    /**
+     * 构造函数。
+     *
+     * @param stripes 条带数量，向上取整为2的幂
+     */
+    public LatencyHistogram(int stripes) {
+        int size = Integer.highestOneBit(Math.max(stripes, 1) - 1) << 1;
+        if (size <= 0) size = 1;
+        this.stripeMask = size - 1;
+        this.counts = new AtomicLongArray(size * STRIPE_STRIDE);
+    }
+
+    /**
+     * 记录一次耗时。
+     *
+     * @param nanos 耗时，单位纳秒
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        int base = stripe() * STRIPE_STRIDE;
+        counts.incrementAndGet(base + bucketIndex(value));
+        counts.addAndGet(base + SUM_INDEX, value);
+        long max;
+        while (value > (max = counts.get(base + MAX_INDEX))) {
+            if (counts.compareAndSet(base + MAX_INDEX, max, value)) break;
+        }
+    }
+
+    /**
+     * 合并所有条带，计算当前的统计结果。
+     *
+     * @return 统计结果
+     */
+    public Snapshot snapshot() {
+        long[] buckets = new long[BUCKET_COUNT];
+        long count = 0;
+        long sum = 0;
+        long max = 0;
+        for (int stripe = 0; stripe <= stripeMask; stripe++) {
+            int base = stripe * STRIPE_STRIDE;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                long bucket = counts.get(base + i);
+                buckets[i] += bucket;
+                count += bucket;
+            }
+            sum += counts.get(base + SUM_INDEX);
+            max = Math.max(max, counts.get(base + MAX_INDEX));
+        }
+        // 百分位数取桶的中点，不超过实际的最大耗时
+        return new Snapshot(count, count == 0 ? 0 : sum / count, Math.min(percentile(buckets, count, 0.5), max),
+                Math.min(percentile(buckets, count, 0.99), max), Math.min(percentile(buckets, count, 0.999), max), max);
+    }
+
+    /**
+     * 清空所有计数。与记录并发执行时，清空期间的少量记录可能丢失。
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    private int stripe() {
+        long id = Thread.currentThread().getId();
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 40) & stripeMask;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * 桶中数值范围的中点
+     */
+    static long bucketValue(int index) {
+        if (index < SUB_BUCKET_COUNT) return index;
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKET_COUNT;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lower = (long) (SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lower + (width - 1) / 2;
+    }
+
+    private static long percentile(long[] buckets, long count, double percentile) {
+        if (count == 0) return 0;
+        long rank = (long) Math.ceil(count * percentile);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) return bucketValue(i);
+        }
+        return bucketValue(buckets.length - 1);
+    }
+
+    /**
+     * 直方图的统计结果，耗时单位均为纳秒
+     */
+    @Getter
+    public static class Snapshot {
+
+        private final long count;
+
+        private final long mean;
+
+        private final long p50;
+
+        private final long p99;
+
+        private final long p999;
+
+        private final long max;
+
+        public Snapshot(long count, long mean, long p50, long p99, long p999, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package cn.wubo.loader.util.aspect;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.regex.Pattern;
+
+/**
+ * 方法匹配器，决定切面链中的切面作用于哪些方法。
+ * 匹配只在创建代理时对每个方法执行一次，不会在每次调用时执行。
+ */
+@FunctionalInterface
+public interface MethodMatcher {
+
+    /**
+     * 判断方法是否匹配。
+     *
+     * @param method 目标类中的方法
+     * @return 是否匹配
+     */
+    boolean matches(Method method);
+
+    /**
+     * 同时满足两个匹配器。
+     *
+     * @param other 另一个匹配器
+     * @return 组合后的匹配器
+     */
+    default MethodMatcher and(MethodMatcher other) {
+        return method -> matches(method) && other.matches(method);
+    }
+
+    /**
+     * 满足任意一个匹配器。
+     *
+     * @param other 另一个匹配器
+     * @return 组合后的匹配器
+     */
+    default MethodMatcher or(MethodMatcher other) {
+        return method -> matches(method) || other.matches(method);
+    }
+
+    /**
+     * 取反。
+     *
+     * @return 取反后的匹配器
+     */
+    default MethodMatcher negate() {
+        return method -> !matches(method);
+    }
+
+    /**
+     * 匹配Object中声明的方法以外的所有方法，toString、hashCode、equals等方法不会被拦截。
+     *
+     * @return 匹配器
+     */
+    static MethodMatcher any() {
+        return method -> method.getDeclaringClass() != Object.class;
+    }
+
+    /**
+     * 匹配方法名满足正则表达式的方法。
+     *
+     * @param regex 正则表达式
+     * @return 匹配器
+     */
+    static MethodMatcher nameMatches(String regex) {
+        Pattern pattern = Pattern.compile(regex);
+        return method -> pattern.matcher(method.getName()).matches();
+    }
+
+    /**
+     * 匹配方法或方法所在类上有指定注解的方法。
+     *
+     * @param annotationType 注解类型
+     * @return 匹配器
+     */
+    static MethodMatcher annotatedWith(Class<? extends Annotation> annotationType) {
+        return method -> method.isAnnotationPresent(annotationType) || method.getDeclaringClass().isAnnotationPresent(annotationType);
+    }
+}
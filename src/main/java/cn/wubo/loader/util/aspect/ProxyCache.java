@@ -0,0 +1,154 @@
+package cn.wubo.loader.util.aspect;
+
+import cn.wubo.loader.util.class_loader.DynamicClassLoader;
+import org.springframework.cglib.proxy.Callback;
+import org.springframework.cglib.proxy.CallbackFilter;
+import org.springframework.cglib.proxy.Dispatcher;
+import org.springframework.cglib.proxy.Enhancer;
+import org.springframework.cglib.proxy.Factory;
+import org.springframework.cglib.proxy.MethodInterceptor;
+import org.springframework.objenesis.SpringObjenesis;
+
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 代理类缓存，按目标类缓存CGLIB生成的代理类及其不执行构造函数的原型实例，之后通过Factory.newInstance创建代理对象。
+ * 切面链的代理类按目标类和被拦截的方法集合缓存，动态类加载器被清理时整体丢弃。
+ */
+public class ProxyCache {
+
+    /**
+     * 切面链代理类的回调类型，回调0为切面链拦截器，回调1直接转发给目标对象
+     */
+    private static final Class<?>[] CHAIN_CALLBACK_TYPES = {MethodInterceptor.class, Dispatcher.class};
+
+    /**
+     * 创建不执行构造函数的原型实例
+     */
+    private static final SpringObjenesis objenesis = new SpringObjenesis();
+
+    private static volatile ClassValue<Factory> cache = newCache();
+
+    private static volatile ClassValue<Map<Set<Method>, Factory>> chainCache = newChainCache();
+
+    static {
+        DynamicClassLoader.addClearListener(ProxyCache::clear);
+    }
+
+    private ProxyCache() {
+    }
+
+    /**
+     * 创建代理对象。
+     *
+     * @param target  目标对象
+     * @param handler 代理回调
+     * @param <T>     目标对象类型
+     * @return 代理对象
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T newInstance(T target, AspectHandler handler) {
+        return (T) cache.get(target.getClass()).newInstance(handler);
+    }
+
+    /**
+     * 使用切面链创建代理对象。
+     *
+     * @param target 目标对象
+     * @param chain  切面链
+     * @param <T>    目标对象类型
+     * @return 代理对象
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T newInstance(T target, AspectChain chain) {
+        Class<?> type = target.getClass();
+        Map<Method, IAspect[]> plan = chain.plan(type);
+        Factory factory = chainCache.get(type).computeIfAbsent(plan.keySet(), intercepted -> createChainFactory(type, Set.copyOf(intercepted)));
+        return (T) factory.newInstance(new Callback[]{new AspectChainHandler(target, plan), (Dispatcher) () -> target});
+    }
+
+    /**
+     * 丢弃所有缓存的代理类。
+     */
+    public static void clear() {
+        cache = newCache();
+        chainCache = newChainCache();
+    }
+
+    private static Factory createChainFactory(Class<?> type, Set<Method> intercepted) {
+        Enhancer enhancer = new Enhancer();
+        enhancer.setSuperclass(type);
+        enhancer.setCallbackTypes(CHAIN_CALLBACK_TYPES);
+        enhancer.setCallbackFilter(new InterceptedFilter(intercepted));
+        return prototype(enhancer);
+    }
+
+    /**
+     * 生成代理类并创建原型实例，原型不执行构造函数，也没有回调，只用于创建代理对象
+     */
+    private static Factory prototype(Enhancer enhancer) {
+        return (Factory) objenesis.newInstance(enhancer.createClass());
+    }
+
+    private static ClassValue<Map<Set<Method>, Factory>> newChainCache() {
+        return new ClassValue<>() {
+            @Override
+            protected Map<Set<Method>, Factory> computeValue(Class<?> type) {
+                return new ConcurrentHashMap<>();
+            }
+        };
+    }
+
+    private static ClassValue<Factory> newCache() {
+        return new ClassValue<>() {
+            @Override
+            protected Factory computeValue(Class<?> type) {
+                Enhancer enhancer = new Enhancer();
+                enhancer.setSuperclass(type);
+                enhancer.setCallbackType(MethodInterceptor.class);
+                return prototype(enhancer);
+            }
+        };
+    }
+
+    /**
+     * 切面链代理类的回调过滤器，按方法签名比较，被拦截的方法集合相同的过滤器相等，CGLIB可以复用已经生成的代理类。
+     */
+    private static final class InterceptedFilter implements CallbackFilter {
+
+        /**
+         * 被拦截的方法签名，由方法名和方法描述符组成，不引用方法所在的类
+         */
+        private final Set<String> signatures;
+
+        InterceptedFilter(Set<Method> intercepted) {
+            Set<String> set = new HashSet<>();
+            intercepted.forEach(method -> set.add(signature(method)));
+            this.signatures = Set.copyOf(set);
+        }
+
+        private static String signature(Method method) {
+            return method.getName() + MethodType.methodType(method.getReturnType(), method.getParameterTypes()).toMethodDescriptorString();
+        }
+
+        @Override
+        public int accept(Method method) {
+            return signatures.contains(signature(method)) ? 0 : 1;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof InterceptedFilter other && signatures.equals(other.signatures);
+        }
+
+        @Override
+        public int hashCode() {
+            return signatures.hashCode();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package cn.wubo.loader.util.aspect;
+
+import cn.wubo.loader.util.class_loader.DynamicClassLoader;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 耗时统计切面，按方法将耗时记录到无锁直方图中，并定期输出p50/p99/p999等统计结果。
+ * 开始时间保存在线程本地的栈中，并发和嵌套调用都可以正确计时。
+ */
+@Slf4j
+public class TimingAspect implements IAspect, AutoCloseable {
+
+    /**
+     * 所有的实例，动态类加载器被替换时丢弃旧类加载器中的方法的统计结果，不再持有旧的类
+     */
+    private static final Set<TimingAspect> aspects = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    static {
+        DynamicClassLoader.addClearListener(() -> {
+            synchronized (aspects) {
+                aspects.forEach(TimingAspect::removeRetired);
+            }
+        });
+    }
+
+    /**
+     * 单例模式，获取共用的耗时统计切面。
+     */
+    @Getter
+    private static final TimingAspect instance = new TimingAspect();
+
+    /**
+     * 每个线程中尚未结束的调用的开始时间
+     */
+    private final ThreadLocal<StartTimes> startTimes = ThreadLocal.withInitial(StartTimes::new);
+
+    /**
+     * 每个方法的耗时直方图
+     */
+    private final Map<Method, LatencyHistogram> histogramMap = new ConcurrentHashMap<>();
+
+    /**
+     * 定期输出统计结果的线程
+     */
+    private ScheduledExecutorService reporter;
+
+    public TimingAspect() {
+        aspects.add(this);
+    }
+
+    @Override
+    public void before(Object target, Method method, Object[] args) {
+        startTimes.get().push(System.nanoTime());
+    }
+
+    @Override
+    public void after(Object target, Method method, Object[] args, Object result) {
+        record(method);
+    }
+
+    @Override
+    public void afterThrow(Object target, Method method, Object[] args, Throwable cause) {
+        record(method);
+    }
+
+    private void record(Method method) {
+        StartTimes times = startTimes.get();
+        // before抛出异常时没有对应的开始时间
+        if (times.isEmpty()) return;
+        long elapsed = System.nanoTime() - times.pop();
+        LatencyHistogram histogram = histogramMap.get(method);
+        if (histogram == null) histogram = histogramMap.computeIfAbsent(method, key -> new LatencyHistogram());
+        histogram.record(elapsed);
+    }
+
+    /**
+     * 获取当前的统计结果。
+     *
+     * @return 方法名与统计结果的映射，方法名格式为类名.方法名
+     */
+    public Map<String, LatencyHistogram.Snapshot> snapshot() {
+        Map<String, LatencyHistogram.Snapshot> snapshotMap = new LinkedHashMap<>();
+        histogramMap.forEach((method, histogram) -> snapshotMap.merge(method.getDeclaringClass().getName() + "." + method.getName(), histogram.snapshot(),
+                // 重载的方法分别统计，输出时保留调用次数较多的一个
+                (a, b) -> a.getCount() >= b.getCount() ? a : b));
+        return snapshotMap;
+    }
+
+    /**
+     * 输出当前的统计结果并清空，区间内没有调用的方法不再统计。
+     */
+    public void report() {
+        histogramMap.forEach((method, histogram) -> {
+            LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+            if (snapshot.getCount() == 0) {
+                histogramMap.remove(method, histogram);
+                return;
+            }
+            histogram.reset();
+            log.info("[耗时统计]{}.{}{} count={} mean={}us p50={}us p99={}us p999={}us max={}us",
+                    method.getDeclaringClass().getName(), method.getName(),
+                    Arrays.stream(method.getParameterTypes()).map(Class::getSimpleName).collect(Collectors.joining(",", "(", ")")), snapshot.getCount(),
+                    micros(snapshot.getMean()), micros(snapshot.getP50()), micros(snapshot.getP99()), micros(snapshot.getP999()), micros(snapshot.getMax()));
+        });
+    }
+
+    /**
+     * 开始定期输出统计结果，重复调用时按新的周期重新开始。
+     *
+     * @param period 周期
+     * @param unit   周期的时间单位
+     */
+    public synchronized void startReport(long period, TimeUnit unit) {
+        close();
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "loader-timing-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(this::report, period, period, unit);
+    }
+
+    /**
+     * 清空所有统计结果。
+     */
+    public void clear() {
+        histogramMap.clear();
+    }
+
+    private void removeRetired() {
+        DynamicClassLoader current = DynamicClassLoader.getInstance();
+        histogramMap.keySet().removeIf(method -> method.getDeclaringClass().getClassLoader() instanceof DynamicClassLoader classLoader && classLoader != current);
+    }
+
+    /**
+     * 停止定期输出统计结果。
+     */
+    @Override
+    public synchronized void close() {
+        if (reporter != null) {
+            reporter.shutdown();
+            reporter = null;
+        }
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.1f", nanos / 1000.0);
+    }
+
+    /**
+     * 线程本地的开始时间栈，只在嵌套深度超过容量时扩容
+     */
+    private static class StartTimes {
+
+        private long[] times = new long[8];
+
+        private int depth;
+
+        void push(long time) {
+            if (depth == times.length) times = Arrays.copyOf(times, depth * 2);
+            times[depth++] = time;
+        }
+
+        long pop() {
+            return times[--depth];
+        }
+
+        boolean isEmpty() {
+            return depth == 0;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package cn.wubo.loader.util.class_loader;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 异步编译器，在后台线程中执行编译任务，相同键的编译任务在执行期间只会执行一次。
+ * Java 21及以上版本使用虚拟线程，同时执行的编译任务数量默认不超过CPU核数。
+ */
+@Slf4j
+public class AsyncCompiler {
+
+    /**
+     * 单例模式，获取异步编译器的实例。
+     */
+    @Getter
+    private static final AsyncCompiler instance = new AsyncCompiler(createExecutor());
+
+    /**
+     * 执行编译任务的线程池
+     */
+    private final ExecutorService executor;
+
+    /**
+     * 限制同时执行的编译任务数量，虚拟线程本身不限制并发
+     */
+    private final Semaphore permits;
+
+    /**
+     * 正在执行的编译任务，键为编译任务的键
+     */
+    private final Map<String, CompletableFuture<?>> inFlightMap = new ConcurrentHashMap<>();
+
+    /**
+     * 被合并到正在执行的编译任务上的请求数量
+     */
+    private final LongAdder coalescedCount = new LongAdder();
+
+    /**
+     * 构造函数，初始化异步编译器。
+     *
+     * @param executor 执行编译任务的线程池
+     */
+    public AsyncCompiler(ExecutorService executor) {
+        this(executor, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * 构造函数，初始化异步编译器。
+     *
+     * @param executor       执行编译任务的线程池
+     * @param maxConcurrency 同时执行的编译任务数量上限
+     */
+    public AsyncCompiler(ExecutorService executor, int maxConcurrency) {
+        if (maxConcurrency <= 0) throw new IllegalArgumentException("maxConcurrency must be positive");
+        this.executor = executor;
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    /**
+     * 提交编译任务。如果相同键的编译任务正在执行，返回该任务的结果，不会重复执行。
+     * 每个调用方得到独立的CompletableFuture，取消或完成其中一个不影响其他调用方。
+     *
+     * @param key  编译任务的键，相同的键表示相同的编译任务，通常由JavaClassCache.key生成
+     * @param task 编译任务
+     * @param <T>  编译结果的类型
+     * @return 编译结果
+     * @throws RejectedExecutionException 如果线程池拒绝执行编译任务，已合并到该任务上的请求以同一个异常完成
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> submit(String key, Supplier<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        CompletableFuture<?> existing = inFlightMap.putIfAbsent(key, future);
+        if (existing != null) {
+            coalescedCount.increment();
+            log.debug("[异步编译]合并到正在执行的编译任务: {}", key);
+            return ((CompletableFuture<T>) existing).copy();
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    inFlightMap.remove(key, future);
+                    future.completeExceptionally(e);
+                    return;
+                }
+                try {
+                    T result = task.get();
+                    // 先移除再完成，之后到达的请求会重新提交编译任务而不是拿到已经完成的结果
+                    inFlightMap.remove(key, future);
+                    future.complete(result);
+                } catch (Throwable e) {
+                    inFlightMap.remove(key, future);
+                    future.completeExceptionally(e);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 线程池拒绝时移除任务，否则之后相同键的请求会一直等待一个不会完成的结果
+            inFlightMap.remove(key, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+        return future.copy();
+    }
+
+    /**
+     * 获取正在执行的编译任务数量。
+     *
+     * @return 编译任务数量
+     */
+    public int getInFlightCount() {
+        return inFlightMap.size();
+    }
+
+    /**
+     * 获取被合并到正在执行的编译任务上的请求数量。
+     *
+     * @return 请求数量
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    /**
+     * 创建执行编译任务的线程池。Java 21及以上版本通过反射使用虚拟线程，保持对Java 17的编译兼容。
+     */
+    private static ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.debug("[异步编译]当前运行环境不支持虚拟线程，使用平台线程池");
+        }
+        AtomicInteger index = new AtomicInteger();
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "loader-async-" + index.getAndIncrement());
+            thread.setDaemon(true);
+            // 使编译线程可以加载应用中的类，例如lombok注解处理器
+            thread.setContextClassLoader(AsyncCompiler.class.getClassLoader());
+            return thread;
+        });
+    }
+}
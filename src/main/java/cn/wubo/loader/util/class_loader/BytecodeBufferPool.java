@@ -0,0 +1,105 @@
+package cn.wubo.loader.util.class_loader;
+
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 字节码的直接内存缓冲区池，缓冲区按2的幂分级复用，池中的总容量有上限。
+ */
+public class BytecodeBufferPool {
+
+    /**
+     * 复用的最小缓冲区为1KB
+     */
+    private static final int MIN_SHIFT = 10;
+
+    /**
+     * 复用的最大缓冲区为1MB，更大的缓冲区每次单独分配
+     */
+    private static final int MAX_SHIFT = 20;
+
+    /**
+     * 默认的池中缓冲区总容量上限
+     */
+    public static final long DEFAULT_MAX_POOLED_BYTES = 16L * 1024 * 1024;
+
+    /**
+     * 单例模式，获取字节码缓冲区池的实例。
+     */
+    @Getter
+    private static final BytecodeBufferPool instance = new BytecodeBufferPool(DEFAULT_MAX_POOLED_BYTES);
+
+    /**
+     * 按容量分级的空闲缓冲区，第i级的容量为2的(MIN_SHIFT + i)次幂
+     */
+    private final List<Deque<ByteBuffer>> idleList = new ArrayList<>();
+
+    /**
+     * 池中缓冲区的总容量上限
+     */
+    @Getter
+    private final long maxPooledBytes;
+
+    /**
+     * 池中空闲缓冲区的总容量
+     */
+    private final AtomicLong pooledBytes = new AtomicLong();
+
+    /**
+     * 构造函数，初始化字节码缓冲区池。
+     *
+     * @param maxPooledBytes 池中缓冲区的总容量上限
+     */
+    public BytecodeBufferPool(long maxPooledBytes) {
+        this.maxPooledBytes = maxPooledBytes;
+        for (int shift = MIN_SHIFT; shift <= MAX_SHIFT; shift++) {
+            idleList.add(new ConcurrentLinkedDeque<>());
+        }
+    }
+
+    /**
+     * 借出一个容量不小于指定大小的直接内存缓冲区，位置为0，limit为容量。
+     *
+     * @param capacity 最小容量
+     * @return 直接内存缓冲区
+     */
+    public ByteBuffer acquire(int capacity) {
+        int shift = Math.max(MIN_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(capacity, 1) - 1));
+        if (shift > MAX_SHIFT) return ByteBuffer.allocateDirect(capacity);
+        ByteBuffer buffer = idleList.get(shift - MIN_SHIFT).poll();
+        if (buffer == null) return ByteBuffer.allocateDirect(1 << shift);
+        pooledBytes.addAndGet(-buffer.capacity());
+        return buffer.clear();
+    }
+
+    /**
+     * 归还缓冲区，归还后不能再使用。不是由池借出的缓冲区（例如堆内存或只读的缓冲区）直接忽略。
+     *
+     * @param buffer 借出的缓冲区
+     */
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if (!buffer.isDirect() || buffer.isReadOnly() || Integer.bitCount(capacity) != 1
+                || capacity < 1 << MIN_SHIFT || capacity > 1 << MAX_SHIFT) return;
+        if (pooledBytes.addAndGet(capacity) > maxPooledBytes) {
+            pooledBytes.addAndGet(-capacity);
+            return;
+        }
+        idleList.get(Integer.numberOfTrailingZeros(capacity) - MIN_SHIFT).offer(buffer.clear());
+    }
+
+    /**
+     * 获取池中空闲缓冲区的总容量。
+     *
+     * @return 字节数
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+}
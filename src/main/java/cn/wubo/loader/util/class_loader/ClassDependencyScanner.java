@@ -0,0 +1,89 @@
+package cn.wubo.loader.util.class_loader;
+
+import cn.wubo.loader.util.exception.LoaderRuntimeException;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 字节码依赖扫描工具，通过解析类文件的常量池获取类引用到的其他类。
+ * 除了常量池中的类引用，还会解析字段、方法描述符和泛型签名中的类型，覆盖只出现在方法参数或返回值中的类。
+ */
+public class ClassDependencyScanner {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private ClassDependencyScanner() {
+    }
+
+    /**
+     * 获取类文件引用到的所有类的二进制名称。
+     *
+     * @param classData 类文件字节码
+     * @return 引用到的类的二进制名称集合，例如cn.wubo.loader.util.LoaderUtils
+     */
+    public static Set<String> referencedClasses(byte[] classData) {
+        Set<String> classNames = new HashSet<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(classData))) {
+            if (in.readInt() != MAGIC) throw new LoaderRuntimeException("不是有效的类文件");
+            // 跳过minor_version和major_version
+            in.readUnsignedShort();
+            in.readUnsignedShort();
+            int count = in.readUnsignedShort();
+            for (int i = 1; i < count; i++) {
+                int tag = in.readUnsignedByte();
+                switch (tag) {
+                    // CONSTANT_Utf8，类名、描述符和签名都以Utf8形式保存
+                    case 1 -> addDescriptorTypes(in.readUTF(), classNames);
+                    // CONSTANT_Class、CONSTANT_String、CONSTANT_MethodType、CONSTANT_Module、CONSTANT_Package，引用的Utf8已经单独解析
+                    case 7, 8, 16, 19, 20 -> in.skipBytes(2);
+                    // CONSTANT_MethodHandle
+                    case 15 -> in.skipBytes(3);
+                    // CONSTANT_Integer、CONSTANT_Float、各类引用、CONSTANT_NameAndType、CONSTANT_Dynamic、CONSTANT_InvokeDynamic
+                    case 3, 4, 9, 10, 11, 12, 17, 18 -> in.skipBytes(4);
+                    // CONSTANT_Long、CONSTANT_Double占用两个常量池位置
+                    case 5, 6 -> {
+                        in.skipBytes(8);
+                        i++;
+                    }
+                    default -> throw new LoaderRuntimeException("无法识别的常量池类型: " + tag);
+                }
+            }
+        } catch (IOException e) {
+            throw new LoaderRuntimeException(e.getMessage(), e);
+        }
+        return classNames;
+    }
+
+    /**
+     * 解析Utf8常量中的类型，既包括CONSTANT_Class引用的内部名称（例如cn/wubo/Foo），
+     * 也包括描述符和签名中的类型（例如(Lcn/wubo/Foo;)V、Ljava/util/List&lt;Lcn/wubo/Foo;&gt;;）。
+     */
+    private static void addDescriptorTypes(String value, Set<String> classNames) {
+        if (!value.isEmpty() && isInternalName(value, 0, value.length())) {
+            classNames.add(value.replace('/', '.'));
+            return;
+        }
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) != 'L') continue;
+            int end = i + 1;
+            while (end < length && value.charAt(end) != ';' && value.charAt(end) != '<') end++;
+            if (end < length && end > i + 1 && isInternalName(value, i + 1, end)) {
+                classNames.add(value.substring(i + 1, end).replace('/', '.'));
+                i = end;
+            }
+        }
+    }
+
+    private static boolean isInternalName(String value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c != '/' && c != '$' && !Character.isJavaIdentifierPart(c)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,421 @@
+package cn.wubo.loader.util.class_loader;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.tools.JavaFileObject;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.JarURLConnection;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+/**
+ * 应用类路径的包索引，键为包名，值为包中的类文件，按类加载器分别构建。
+ * MemFileManager直接从索引中列出类路径中的类，包括Spring Boot fat jar中的嵌套jar。
+ */
+@Slf4j
+public class ClassPathIndex {
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    /**
+     * 是否启用类路径索引
+     */
+    private static volatile boolean enabled = true;
+
+    /**
+     * 已构建的索引实例，键为构建索引的类加载器，不阻止类加载器被回收
+     */
+    private static final Map<ClassLoader, ClassPathIndex> instanceMap = new WeakHashMap<>();
+
+    /**
+     * 包名与包中类文件的映射
+     */
+    private final Map<String, List<IndexedClass>> packageMap;
+
+    /**
+     * 索引打开的jar文件，重置索引时关闭
+     */
+    private final List<JarFile> jarFiles;
+
+    private ClassPathIndex(Map<String, List<IndexedClass>> packageMap, List<JarFile> jarFiles) {
+        this.packageMap = packageMap;
+        this.jarFiles = jarFiles;
+    }
+
+    /**
+     * 获取当前线程的上下文类加载器对应的类路径索引。
+     *
+     * @return 类路径索引，未启用或构建失败时返回null
+     */
+    public static ClassPathIndex getInstance() {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        return getInstance(classLoader == null ? ClassPathIndex.class.getClassLoader() : classLoader);
+    }
+
+    /**
+     * 获取类加载器对应的类路径索引，首次调用时构建。
+     *
+     * @param classLoader 应用类加载器
+     * @return 类路径索引，未启用或构建失败时返回null
+     */
+    public static synchronized ClassPathIndex getInstance(ClassLoader classLoader) {
+        if (!enabled) return null;
+        ClassPathIndex index = instanceMap.get(classLoader);
+        if (index == null) {
+            index = build(classLoader);
+            if (index != null) instanceMap.put(classLoader, index);
+        }
+        return index;
+    }
+
+    /**
+     * 设置是否启用类路径索引，关闭后MemFileManager将类路径的列表请求转发给标准文件管理器。
+     *
+     * @param enabled 是否启用
+     */
+    public static void setEnabled(boolean enabled) {
+        ClassPathIndex.enabled = enabled;
+        if (!enabled) reset();
+    }
+
+    /**
+     * 丢弃已构建的索引，下一次使用时重新构建，应用类路径发生变化后调用。
+     */
+    public static synchronized void reset() {
+        for (ClassPathIndex index : instanceMap.values()) {
+            for (JarFile jarFile : index.jarFiles) {
+                try {
+                    jarFile.close();
+                } catch (IOException e) {
+                    log.debug("[类路径索引]关闭jar文件失败: {}", jarFile.getName());
+                }
+            }
+        }
+        instanceMap.clear();
+    }
+
+    /**
+     * 列出包中的类文件。
+     *
+     * @param packageName 包名，空字符串表示默认包
+     * @param recurse     是否包含子包
+     * @return 类文件列表
+     */
+    public List<IndexedClass> list(String packageName, boolean recurse) {
+        if (!recurse) return packageMap.getOrDefault(packageName, Collections.emptyList());
+        List<IndexedClass> result = new ArrayList<>();
+        String prefix = packageName.isEmpty() ? "" : packageName + ".";
+        packageMap.forEach((name, classes) -> {
+            if (name.equals(packageName) || name.startsWith(prefix)) result.addAll(classes);
+        });
+        return result;
+    }
+
+    /**
+     * 构建索引，各个类路径条目并行扫描，按照类路径顺序合并，同名类以先出现的为准。
+     *
+     * @param classLoader 应用类加载器
+     * @return 类路径索引，构建失败时返回null
+     */
+    private static ClassPathIndex build(ClassLoader classLoader) {
+        long start = System.nanoTime();
+        try {
+            List<URL> roots = new ArrayList<>(collectRoots(classLoader));
+            List<RootScan> scans = roots.parallelStream().map(ClassPathIndex::scan).toList();
+
+            Map<String, List<IndexedClass>> packageMap = new HashMap<>();
+            Set<String> binaryNames = new HashSet<>();
+            List<JarFile> jarFiles = new ArrayList<>();
+            for (RootScan scan : scans) {
+                if (scan.jarFile != null) jarFiles.add(scan.jarFile);
+                for (IndexedClass indexedClass : scan.classes) {
+                    if (binaryNames.add(indexedClass.binaryName)) {
+                        packageMap.computeIfAbsent(indexedClass.packageName, key -> new ArrayList<>()).add(indexedClass);
+                    }
+                }
+            }
+            log.debug("[类路径索引]索引构建完成，类路径条目{}个，类{}个，耗时{}ms", roots.size(), binaryNames.size(), (System.nanoTime() - start) / 1_000_000);
+            return new ClassPathIndex(packageMap, jarFiles);
+        } catch (RuntimeException e) {
+            log.warn("[类路径索引]索引构建失败，使用标准文件管理器", e);
+            enabled = false;
+            return null;
+        }
+    }
+
+    /**
+     * 收集类加载器链上的URL和java.class.path中的条目，并展开jar清单中的Class-Path。
+     */
+    private static Set<URL> collectRoots(ClassLoader classLoader) {
+        List<URL> urls = new ArrayList<>();
+        List<ClassLoader> chain = new ArrayList<>();
+        for (ClassLoader current = classLoader; current != null && current != ClassLoader.getPlatformClassLoader(); current = current.getParent()) {
+            chain.add(current);
+        }
+        // 父类加载器优先，与类加载的委派顺序一致
+        Collections.reverse(chain);
+        for (ClassLoader current : chain) {
+            if (current instanceof URLClassLoader urlClassLoader) {
+                Collections.addAll(urls, urlClassLoader.getURLs());
+            } else if (current == ClassLoader.getSystemClassLoader()) {
+                for (String path : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+                    if (!path.isEmpty()) urls.add(toUrl(Paths.get(path)));
+                }
+            }
+        }
+
+        Set<URL> roots = new LinkedHashSet<>();
+        for (URL url : urls) {
+            addRoot(roots, url);
+        }
+        return roots;
+    }
+
+    private static void addRoot(Set<URL> roots, URL url) {
+        if (!roots.add(url) || !"file".equals(url.getProtocol()) || !url.getPath().endsWith(".jar")) return;
+        Path path = toPath(url);
+        if (!Files.isRegularFile(path)) return;
+        try (JarFile jarFile = new JarFile(path.toFile())) {
+            Manifest manifest = jarFile.getManifest();
+            String classPath = manifest == null ? null : manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+            if (classPath == null) return;
+            for (String entry : classPath.trim().split("\\s+")) {
+                if (!entry.isEmpty()) addRoot(roots, new URL(url, entry));
+            }
+        } catch (IOException e) {
+            log.debug("[类路径索引]读取jar清单失败: {}", url);
+        }
+    }
+
+    /**
+     * 扫描单个类路径条目，支持目录、jar文件以及通过JarURLConnection访问的嵌套jar。
+     */
+    private static RootScan scan(URL url) {
+        try {
+            if ("file".equals(url.getProtocol())) {
+                Path path = toPath(url);
+                if (Files.isDirectory(path)) return scanDirectory(path);
+                if (Files.isRegularFile(path)) return scanJar(new JarFile(path.toFile()), "jar:" + url + "!/");
+                return new RootScan(null, Collections.emptyList());
+            }
+            URL jarUrl = "jar".equals(url.getProtocol()) ? url : new URL("jar:" + url + "!/");
+            URLConnection connection = jarUrl.openConnection();
+            if (connection instanceof JarURLConnection jarURLConnection) {
+                jarURLConnection.setUseCaches(false);
+                String base = jarUrl.toString();
+                return scanJar(jarURLConnection.getJarFile(), base.endsWith("/") ? base : base + "/");
+            }
+        } catch (IOException | UncheckedIOException e) {
+            log.debug("[类路径索引]扫描类路径条目失败: {}", url);
+        }
+        return new RootScan(null, Collections.emptyList());
+    }
+
+    private static RootScan scanDirectory(Path directory) throws IOException {
+        List<IndexedClass> classes = new ArrayList<>();
+        try (Stream<Path> stream = Files.walk(directory)) {
+            stream.filter(path -> path.getFileName().toString().endsWith(CLASS_SUFFIX)).forEach(path -> {
+                String entryName = directory.relativize(path).toString().replace(File.separatorChar, '/');
+                IndexedClass indexedClass = IndexedClass.of(entryName, path.toUri(), null);
+                if (indexedClass != null) classes.add(indexedClass);
+            });
+        }
+        return new RootScan(null, classes);
+    }
+
+    private static RootScan scanJar(JarFile jarFile, String base) {
+        List<IndexedClass> classes = new ArrayList<>();
+        Enumeration<JarEntry> entries = jarFile.entries();
+        while (entries.hasMoreElements()) {
+            JarEntry entry = entries.nextElement();
+            String entryName = entry.getName();
+            // 多版本jar中的类由javac按目标版本处理，这里只索引基础版本
+            if (entry.isDirectory() || !entryName.endsWith(CLASS_SUFFIX) || entryName.startsWith("META-INF/")) continue;
+            IndexedClass indexedClass = IndexedClass.of(entryName, URI.create(base + entryName.replace(" ", "%20")), jarFile);
+            if (indexedClass != null) classes.add(indexedClass);
+        }
+        return new RootScan(jarFile, classes);
+    }
+
+    private static URL toUrl(Path path) {
+        try {
+            return path.toAbsolutePath().toUri().toURL();
+        } catch (MalformedURLException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Path toPath(URL url) {
+        try {
+            return Paths.get(url.toURI());
+        } catch (URISyntaxException e) {
+            return Paths.get(url.getPath());
+        }
+    }
+
+    /**
+     * 单个类路径条目的扫描结果
+     */
+    private record RootScan(JarFile jarFile, List<IndexedClass> classes) {
+    }
+
+    /**
+     * 索引中的类文件，供javac读取类路径中的类。
+     * jar中条目的URI是不透明URI（jar:file:...!/...），不能使用SimpleJavaFileObject，因此直接实现JavaFileObject。
+     */
+    public static class IndexedClass implements JavaFileObject {
+
+        /**
+         * 类文件的URI
+         */
+        private final URI uri;
+
+        /**
+         * 类的二进制名称，例如cn.wubo.loader.util.LoaderUtils
+         */
+        @Getter
+        private final String binaryName;
+
+        /**
+         * 类所在的包名
+         */
+        private final String packageName;
+
+        /**
+         * 类的简单名称，包含内部类的$分隔部分
+         */
+        private final String simpleName;
+
+        /**
+         * jar中的条目名称
+         */
+        private final String entryName;
+
+        /**
+         * 类所在的jar文件，目录中的类为null
+         */
+        private final JarFile jarFile;
+
+        private IndexedClass(URI uri, String binaryName, String packageName, String simpleName, String entryName, JarFile jarFile) {
+            this.uri = uri;
+            this.binaryName = binaryName;
+            this.packageName = packageName;
+            this.simpleName = simpleName;
+            this.entryName = entryName;
+            this.jarFile = jarFile;
+        }
+
+        private static IndexedClass of(String entryName, URI uri, JarFile jarFile) {
+            String binaryName = entryName.substring(0, entryName.length() - CLASS_SUFFIX.length()).replace('/', '.');
+            if (binaryName.endsWith("module-info") || binaryName.endsWith("package-info")) return null;
+            int index = binaryName.lastIndexOf('.');
+            String packageName = index < 0 ? "" : binaryName.substring(0, index);
+            String simpleName = binaryName.substring(index + 1);
+            return new IndexedClass(uri, binaryName, packageName, simpleName, entryName, jarFile);
+        }
+
+        @Override
+        public URI toUri() {
+            return uri;
+        }
+
+        @Override
+        public String getName() {
+            return uri.toString();
+        }
+
+        @Override
+        public InputStream openInputStream() throws IOException {
+            if (jarFile == null) return Files.newInputStream(Paths.get(uri));
+            JarEntry entry = jarFile.getJarEntry(entryName);
+            if (entry == null) throw new IOException("jar条目不存在: " + uri);
+            return jarFile.getInputStream(entry);
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Reader openReader(boolean ignoreEncodingErrors) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Writer openWriter() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long getLastModified() {
+            return 0L;
+        }
+
+        @Override
+        public boolean delete() {
+            return false;
+        }
+
+        @Override
+        public Kind getKind() {
+            return Kind.CLASS;
+        }
+
+        @Override
+        public boolean isNameCompatible(String simpleName, Kind kind) {
+            return kind == Kind.CLASS && this.simpleName.equals(simpleName);
+        }
+
+        @Override
+        public NestingKind getNestingKind() {
+            return null;
+        }
+
+        @Override
+        public Modifier getAccessLevel() {
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return getName();
+        }
+    }
+}
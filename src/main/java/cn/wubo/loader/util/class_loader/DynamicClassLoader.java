@@ -1,14 +1,26 @@
 package cn.wubo.loader.util.class_loader;
 
-import cn.wubo.loader.util.exception.LoaderRuntimeException;
+import cn.wubo.loader.util.metrics.LoaderMetrics;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
+import javax.tools.JavaFileObject;
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.util.HashMap;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 /**
  * 动态类加载器，扩展自URLClassLoader，支持动态加载类。
@@ -17,10 +29,50 @@ import java.util.Map;
 @Slf4j
 public class DynamicClassLoader extends URLClassLoader {
 
+    static {
+        // 按类名加锁，不再在整个类加载器上加锁
+        ClassLoader.registerAsParallelCapable();
+    }
+
     /**
      * 类映射，存储类的完全限定名和对应的Class对象。
      */
-    private Map<String, Class<?>> classMap = new HashMap<>();
+    private final Map<String, Class<?>> classMap = new ConcurrentHashMap<>();
+
+    /**
+     * 已添加但尚未定义的类的字节码，第一次加载时定义并释放。
+     */
+    private final Map<String, JavaMemClass> pendingMap = new ConcurrentHashMap<>();
+
+    /**
+     * 已经定义的类的字节码总大小
+     */
+    private final LongAdder bytecodeSize = new LongAdder();
+
+    /**
+     * 从jar中加载的类数量
+     */
+    private final LongAdder jarClassCount = new LongAdder();
+
+    /**
+     * 通过addJar添加的jar的包索引
+     */
+    private final JarIndex jarIndex = new JarIndex();
+
+    /**
+     * 未命中缓存的容量，超过时整体清空
+     */
+    private static final int MISS_CACHE_SIZE = 4096;
+
+    /**
+     * 当前类加载器的内容版本，添加jar或类时加一
+     */
+    private final AtomicLong contentVersion = new AtomicLong();
+
+    /**
+     * 未找到的类名与记录时的内容版本
+     */
+    private final Map<String, Long> missCache = new ConcurrentHashMap<>();
 
     /**
      * 构造函数，使用当前线程的上下文类加载器作为父类加载器。
@@ -29,33 +81,122 @@ public class DynamicClassLoader extends URLClassLoader {
      */
     public DynamicClassLoader(ClassLoader parent) {
         super(new URL[0], parent);
+        LoaderLeakDetector.getInstance().track(this);
     }
 
     /**
-     * 单例模式，获取动态类加载器的实例。
+     * 代数计数器
+     */
+    private static final AtomicLong generationCounter = new AtomicLong();
+
+    /**
+     * 类加载器的代数，每创建一个动态类加载器加一，数值越大越新。
      */
     @Getter
-    private static DynamicClassLoader instance = new DynamicClassLoader(Thread.currentThread().getContextClassLoader());
+    private final long generation = generationCounter.incrementAndGet();
+
+    /**
+     * 单例模式，获取当前一代的动态类加载器。
+     */
+    @Getter
+    private static volatile DynamicClassLoader instance = new DynamicClassLoader(Thread.currentThread().getContextClassLoader());
+
+    /**
+     * 动态类加载器被清理时的回调，用于释放与旧类相关的缓存
+     */
+    private static final List<Runnable> clearListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 替换动态类加载器时的锁，保证初始化和回调按替换顺序执行
+     */
+    private static final Object publishLock = new Object();
 
     /**
      * 清理并重新初始化动态类加载器。
      * 该方法旨在重新配置动态类加载器，以便它可以继续加载新的类，而不会受到之前加载类的影响。
-     * 这是通过关闭当前的动态类加载器实例并创建一个新的实例来实现的。
-     * 在这个过程中，它使用当前线程的上下文类加载器作为新实例的基础。
-     * 如果在关闭当前实例或创建新实例的过程中发生IO异常，将会抛出一个LoaderRuntimeException。
+     * 这是通过发布一个空的新一代动态类加载器来实现的，新一代与当前一代使用相同的父类加载器。
+     * 当前一代不关闭，正在执行的调用不受影响，其中的类和jar文件句柄在不再被引用后由垃圾回收释放。
      */
     public static void clear() {
-        try {
-            // 关闭当前的动态类加载器实例
-            instance.close();
-            // 创建一个新的动态类加载器实例，基于当前线程的上下文类加载器
-            instance = new DynamicClassLoader(Thread.currentThread().getContextClassLoader());
-        } catch (IOException e) {
-            // 抛出运行时异常，带有IO异常的信息和根异常
-            throw new LoaderRuntimeException(e.getMessage(), e);
+        swap(next -> {
+        });
+    }
+
+    /**
+     * 构建并发布新一代的动态类加载器，多次替换依次执行，初始化期间getInstance返回的是将被替换的一代。
+     * 初始化失败时关闭新一代，当前一代保持不变。
+     *
+     * @param initializer 新一代的初始化逻辑
+     * @return 发布后的新一代动态类加载器
+     */
+    public static DynamicClassLoader swap(Consumer<DynamicClassLoader> initializer) {
+        synchronized (publishLock) {
+            DynamicClassLoader next = new DynamicClassLoader(instance.getParent());
+            try {
+                initializer.accept(next);
+            } catch (RuntimeException | Error e) {
+                try {
+                    next.close();
+                } catch (IOException ioException) {
+                    e.addSuppressed(ioException);
+                }
+                throw e;
+            }
+            DynamicClassLoader previous = instance;
+            instance = next;
+            LoaderLeakDetector.getInstance().retire(previous);
+            log.debug("[动态编译]发布第{}代动态类加载器，替换第{}代", next.generation, previous.generation);
+            // 通知缓存丢弃旧类加载器中的类
+            clearListeners.forEach(Runnable::run);
+            return next;
         }
     }
 
+    /**
+     * 添加动态类加载器被清理时的回调。
+     *
+     * @param listener 回调
+     */
+    public static void addClearListener(Runnable listener) {
+        clearListeners.add(listener);
+    }
+
+    /**
+     * 获取类映射中已经定义的类数量。
+     *
+     * @return 类数量
+     */
+    public int getClassCount() {
+        return classMap.size();
+    }
+
+    /**
+     * 获取已添加但尚未定义的类数量。
+     *
+     * @return 类数量
+     */
+    public int getPendingCount() {
+        return pendingMap.size();
+    }
+
+    /**
+     * 获取从jar中加载的类数量。
+     *
+     * @return 类数量
+     */
+    public long getJarClassCount() {
+        return jarClassCount.sum();
+    }
+
+    /**
+     * 获取通过addClassMap定义的类的字节码总大小。
+     *
+     * @return 字节数
+     */
+    public long getBytecodeSize() {
+        return bytecodeSize.sum();
+    }
+
     /**
      * 添加URL到类加载器的搜索路径。
      *
@@ -63,17 +204,166 @@ public class DynamicClassLoader extends URLClassLoader {
      */
     @Override
     public void addURL(URL url) {
+        contentVersion.incrementAndGet();
         super.addURL(url);
     }
 
     /**
-     * 将类的字节码添加到类映射中，以供动态加载。
+     * 添加jar，并按包建立索引。与addURL相比，查找类和资源时不需要依次检查每个jar。
+     *
+     * @param archive jar
+     */
+    public void addJar(JarArchive archive) {
+        contentVersion.incrementAndGet();
+        jarIndex.add(archive);
+    }
+
+    /**
+     * 获取通过addJar添加的jar。
+     *
+     * @return 按添加顺序排列的jar
+     */
+    public List<JarArchive> getJars() {
+        return jarIndex.getArchives();
+    }
+
+    /**
+     * 将类的字节码添加到类映射中，以供动态加载，类在第一次加载时才定义。
      *
      * @param fullClassName 类的完全限定名
      * @param classData     类的字节码数据
+     * @throws LinkageError 如果同名的类已经定义
      */
     public void addClassMap(String fullClassName, byte[] classData) {
-        classMap.put(fullClassName, defineClass(fullClassName, classData, 0, classData.length));
+        addPending(new JavaMemClass(fullClassName, JavaFileObject.Kind.CLASS, classData));
+    }
+
+    /**
+     * 批量将类的字节码添加到类映射中，类在第一次加载时才定义。
+     * 同一批次的类之间可以互相引用（例如继承同一批次中的父类），定义顺序与传入顺序无关。
+     *
+     * @param classDataMap 类的完全限定名与字节码数据的映射
+     * @throws LinkageError 如果同名的类已经定义
+     */
+    public void addClassMap(Map<String, byte[]> classDataMap) {
+        addClassMap(classDataMap, false);
+    }
+
+    /**
+     * 批量将类的字节码添加到类映射中。
+     *
+     * @param classDataMap 类的完全限定名与字节码数据的映射
+     * @param preload      为true时立即定义所有的类，为false时第一次加载时才定义
+     * @throws LinkageError 如果同名的类已经定义
+     */
+    public void addClassMap(Map<String, byte[]> classDataMap, boolean preload) {
+        classDataMap.forEach(this::addClassMap);
+        if (preload) preload(classDataMap.keySet());
+    }
+
+    /**
+     * 批量添加编译结果，类在第一次加载时直接从编译输出的直接内存中定义，不复制到堆上。
+     * 添加后编译结果由类加载器持有，类定义后释放，调用方不能再读取其中的字节码。
+     *
+     * @param javaMemClassMap 类的完全限定名与编译结果的映射
+     * @param preload         为true时立即定义所有的类，为false时第一次加载时才定义
+     * @throws LinkageError 如果同名的类已经定义
+     */
+    public void addJavaMemClassMap(Map<String, JavaMemClass> javaMemClassMap, boolean preload) {
+        javaMemClassMap.values().forEach(this::addPending);
+        if (preload) preload(javaMemClassMap.keySet());
+    }
+
+    /**
+     * 立即定义已添加但尚未定义的类，适用于对第一次调用的延迟敏感的类。
+     *
+     * @param fullClassNames 类的完全限定名集合
+     */
+    public void preload(Collection<String> fullClassNames) {
+        for (String fullClassName : fullClassNames) {
+            definePending(fullClassName);
+        }
+    }
+
+    private void addPending(JavaMemClass javaMemClass) {
+        String fullClassName = javaMemClass.getClassName();
+        synchronized (getClassLoadingLock(fullClassName)) {
+            if (classMap.containsKey(fullClassName))
+                throw new LinkageError("loader " + this + " attempted duplicate class definition for " + fullClassName);
+            // 先增加版本，查找期间添加的类不会被记录为未找到
+            contentVersion.incrementAndGet();
+            JavaMemClass previous = pendingMap.put(fullClassName, javaMemClass);
+            if (previous != null && previous != javaMemClass) previous.release();
+        }
+    }
+
+    /**
+     * 定义尚未定义的类并释放其字节码，已经定义过的类直接返回。
+     *
+     * @param fullClassName 类的完全限定名
+     * @return 定义后的Class对象，没有添加过该类时返回null
+     */
+    private Class<?> definePending(String fullClassName) {
+        synchronized (getClassLoadingLock(fullClassName)) {
+            // 先移除字节码，定义失败时再次加载抛出ClassNotFoundException
+            JavaMemClass javaMemClass = pendingMap.remove(fullClassName);
+            if (javaMemClass == null) return classMap.get(fullClassName);
+            long start = LoaderMetrics.start();
+            try {
+                Class<?> clazz = defineClass(fullClassName, javaMemClass.getBuffer(), (ProtectionDomain) null);
+                classMap.put(fullClassName, clazz);
+                bytecodeSize.add(javaMemClass.getSize());
+                LoaderMetrics.defined(1, start);
+                return clazz;
+            } finally {
+                javaMemClass.release();
+            }
+        }
+    }
+
+    /**
+     * 加载类，最近未找到且之后没有添加过jar或类的类名直接抛出ClassNotFoundException，不再委托父类加载器和查找jar。
+     *
+     * @param fullClassName 类的完全限定名
+     * @param resolve       是否链接类
+     * @return 加载的Class对象
+     * @throws ClassNotFoundException 如果类未找到
+     */
+    @Override
+    protected Class<?> loadClass(String fullClassName, boolean resolve) throws ClassNotFoundException {
+        long version = getContentVersion();
+        Long missVersion = missCache.get(fullClassName);
+        if (missVersion != null && missVersion == version) {
+            // 记录之后可能通过Lookup.defineClass直接定义到当前类加载器中，不经过addClassMap
+            Class<?> clazz = findLoadedClass(fullClassName);
+            if (clazz == null) throw new CachedClassNotFoundException(fullClassName);
+            missCache.remove(fullClassName);
+            if (resolve) resolveClass(clazz);
+            return clazz;
+        }
+        try {
+            return super.loadClass(fullClassName, resolve);
+        } catch (ClassNotFoundException e) {
+            // 查找期间内容发生变化时不记录，记录之后内容发生变化时版本不再相等
+            if (getContentVersion() == version) {
+                if (missCache.size() >= MISS_CACHE_SIZE) missCache.clear();
+                missCache.put(fullClassName, version);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 获取自身及作为祖先的动态类加载器的内容版本之和，任意一个添加jar或类后都会变化。
+     *
+     * @return 内容版本
+     */
+    private long getContentVersion() {
+        long version = 0;
+        for (ClassLoader classLoader = this; classLoader != null; classLoader = classLoader.getParent()) {
+            if (classLoader instanceof DynamicClassLoader dynamicClassLoader) version += dynamicClassLoader.contentVersion.get();
+        }
+        return version;
     }
 
     /**
@@ -88,11 +378,101 @@ public class DynamicClassLoader extends URLClassLoader {
     protected Class<?> findClass(String fullClassName) throws ClassNotFoundException {
         // 尝试从类映射中加载类
         Class<?> clazz = classMap.get(fullClassName);
-        // 如果类在映射中不存在，则记录debug信息
-        if (clazz == null) log.debug("[动态编译]classMap未找到类:" + fullClassName);
-        else return clazz; // 如果类在classMap中找到，则直接返回
-        // 如果classMap中未找到类，则调用父ClassLoader的findClass方法尝试加载类
-        return super.findClass(fullClassName);
+        // 第一次加载延迟定义的类时，定义该类并释放字节码
+        if (clazz == null && pendingMap.containsKey(fullClassName)) clazz = definePending(fullClassName);
+        // 如果类在classMap中找到，则直接返回
+        if (clazz != null) return clazz;
+        LoaderMetrics.classMissed();
+        // 从按包索引的jar中查找类
+        Class<?> jarClass = jarIndex.isEmpty() ? null : defineJarClass(fullClassName);
+        // 如果jar索引中也未找到类，则调用父ClassLoader的findClass方法尝试加载类
+        if (jarClass == null) jarClass = super.findClass(fullClassName);
+        jarClassCount.increment();
+        return jarClass;
     }
-}
 
+    /**
+     * 从jar索引中读取并定义类，未压缩的类直接从映射内存中定义。
+     *
+     * @param fullClassName 类的完全限定名
+     * @return 定义后的Class对象，jar中没有该类时返回null
+     */
+    private Class<?> defineJarClass(String fullClassName) {
+        String entryName = fullClassName.replace('.', '/') + ".class";
+        JarArchive archive = jarIndex.find(entryName);
+        if (archive == null) return null;
+        int index = fullClassName.lastIndexOf('.');
+        if (index > 0) definePackage(fullClassName.substring(0, index), archive);
+        return defineClass(fullClassName, archive.read(entryName), new CodeSource(archive.getUrl(), (CodeSigner[]) null));
+    }
+
+    private void definePackage(String packageName, JarArchive archive) {
+        if (getDefinedPackage(packageName) != null) return;
+        try {
+            if (archive.getManifest() != null) definePackage(packageName, archive.getManifest(), archive.getUrl());
+            else definePackage(packageName, null, null, null, null, null, null, null);
+        } catch (IllegalArgumentException e) {
+            // 其他线程已经定义了该包
+        }
+    }
+
+    /**
+     * 查找资源，先从jar索引中查找，再查找通过addURL添加的路径。
+     *
+     * @param name 资源名称
+     * @return 资源的URL，未找到时返回null
+     */
+    @Override
+    public URL findResource(String name) {
+        JarArchive archive = jarIndex.isEmpty() ? null : jarIndex.find(name);
+        return archive != null ? archive.getEntryUrl(name) : super.findResource(name);
+    }
+
+    /**
+     * 查找所有同名资源，jar索引中的资源在前。
+     *
+     * @param name 资源名称
+     * @return 资源的URL
+     * @throws IOException 如果读取失败
+     */
+    @Override
+    public Enumeration<URL> findResources(String name) throws IOException {
+        if (jarIndex.isEmpty()) return super.findResources(name);
+        List<URL> urls = jarIndex.findAll(name);
+        urls.addAll(Collections.list(super.findResources(name)));
+        return Collections.enumeration(urls);
+    }
+
+    /**
+     * 关闭类加载器，释放尚未定义的类的字节码，并标记为已退役，之后仍未被回收时由LoaderLeakDetector报告。
+     * 关闭后尚未定义的类不能再加载，需要在关闭后使用的类应当通过preload提前定义。
+     *
+     * @throws IOException 如果关闭jar文件失败
+     */
+    @Override
+    public void close() throws IOException {
+        for (String fullClassName : pendingMap.keySet()) {
+            JavaMemClass javaMemClass = pendingMap.remove(fullClassName);
+            if (javaMemClass != null) javaMemClass.release();
+        }
+        LoaderLeakDetector.getInstance().retire(this);
+        super.close();
+    }
+
+    /**
+     * 命中未命中缓存时抛出的异常，不填充调用栈
+     */
+    private static class CachedClassNotFoundException extends ClassNotFoundException {
+
+        private static final long serialVersionUID = 1L;
+
+        CachedClassNotFoundException(String fullClassName) {
+            super(fullClassName);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
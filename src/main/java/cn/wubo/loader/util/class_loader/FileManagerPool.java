@@ -0,0 +1,107 @@
+package cn.wubo.loader.util.class_loader;
+
+import cn.wubo.loader.util.exception.LoaderRuntimeException;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 标准文件管理器池，编译结束后归还，下一次编译直接复用已经缓存了类路径信息的实例。
+ */
+@Slf4j
+public class FileManagerPool {
+
+    /**
+     * 单例模式，获取文件管理器池的实例，空闲实例数上限为CPU核数。
+     */
+    @Getter
+    private static final FileManagerPool instance = new FileManagerPool(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * 系统Java编译器，所有编译任务共享
+     */
+    @Getter
+    private final JavaCompiler compiler;
+
+    /**
+     * 空闲的文件管理器
+     */
+    private final BlockingQueue<StandardJavaFileManager> idleQueue;
+
+    /**
+     * 构造函数，初始化文件管理器池。
+     *
+     * @param maxIdle 空闲文件管理器的数量上限
+     */
+    public FileManagerPool(int maxIdle) {
+        this.compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) throw new LoaderRuntimeException("当前运行环境未提供Java编译器，请使用JDK运行");
+        this.idleQueue = new ArrayBlockingQueue<>(maxIdle);
+    }
+
+    /**
+     * 借出一个文件管理器，池中没有空闲实例时新建。
+     *
+     * @return 标准文件管理器
+     */
+    public StandardJavaFileManager borrow() {
+        StandardJavaFileManager fileManager = idleQueue.poll();
+        if (fileManager != null) return fileManager;
+        log.debug("[文件管理器池]创建标准文件管理器");
+        return compiler.getStandardFileManager(null, null, null);
+    }
+
+    /**
+     * 归还文件管理器，池已满时直接关闭。
+     *
+     * @param fileManager 借出的文件管理器
+     */
+    public void release(StandardJavaFileManager fileManager) {
+        if (!idleQueue.offer(fileManager)) close(fileManager);
+    }
+
+    /**
+     * 预热文件管理器池，提前创建文件管理器并扫描类路径，使首次编译不再承担这部分开销。
+     *
+     * @param count 预热的文件管理器数量
+     */
+    public void warmup(int count) {
+        for (int i = 0; i < count; i++) {
+            StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+            try {
+                // 列出类路径中的所有类，触发jar文件的打开和目录扫描
+                fileManager.list(StandardLocation.CLASS_PATH, "", EnumSet.of(JavaFileObject.Kind.CLASS), true);
+            } catch (IOException e) {
+                throw new LoaderRuntimeException(e.getMessage(), e);
+            }
+            release(fileManager);
+        }
+    }
+
+    /**
+     * 关闭并清空所有空闲的文件管理器，类路径发生变化后可以调用此方法使缓存失效。
+     */
+    public void clear() {
+        StandardJavaFileManager fileManager;
+        while ((fileManager = idleQueue.poll()) != null) {
+            close(fileManager);
+        }
+    }
+
+    private static void close(StandardJavaFileManager fileManager) {
+        try {
+            fileManager.close();
+        } catch (IOException e) {
+            log.warn("[文件管理器池]关闭文件管理器失败", e);
+        }
+    }
+}
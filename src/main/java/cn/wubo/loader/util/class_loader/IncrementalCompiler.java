@@ -0,0 +1,191 @@
+package cn.wubo.loader.util.class_loader;
+
+import cn.wubo.loader.util.exception.LoaderRuntimeException;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 增量编译器，记录动态编译的源代码之间的依赖关系。
+ * 某个源代码变化时只重新编译它以及依赖它的源代码，其余源代码的字节码直接复用。
+ */
+@Slf4j
+public class IncrementalCompiler {
+
+    /**
+     * 单例模式，获取增量编译器的实例。
+     */
+    @Getter
+    private static final IncrementalCompiler instance = new IncrementalCompiler();
+
+    /**
+     * 源代码，键为源代码对应的完全限定类名
+     */
+    private final Map<String, String> sourceMap = new LinkedHashMap<>();
+
+    /**
+     * 每个源代码编译生成的类，包括内部类
+     */
+    private final Map<String, Map<String, byte[]>> unitClassMap = new HashMap<>();
+
+    /**
+     * 依赖关系，键为源代码，值为它引用到的其他源代码
+     */
+    private final Map<String, Set<String>> dependencyMap = new HashMap<>();
+
+    /**
+     * 当前一代的动态类加载器
+     */
+    @Getter
+    private volatile DynamicClassLoader classLoader;
+
+    /**
+     * 编译新增或变化的源代码，只重新编译受影响的部分。
+     *
+     * @param sources 新增或变化的完全限定类名与Java源代码的映射
+     * @return 实际重新编译的源代码对应的完全限定类名集合
+     */
+    public synchronized Set<String> compiler(Map<String, String> sources) {
+        Set<String> affected = new LinkedHashSet<>(sources.keySet());
+        affected.addAll(dependents(sources.keySet()));
+
+        Map<String, String> compileSources = new LinkedHashMap<>();
+        for (String unit : affected) {
+            compileSources.put(unit, sources.getOrDefault(unit, sourceMap.get(unit)));
+        }
+        Map<String, byte[]> dependencies = new HashMap<>();
+        unitClassMap.forEach((unit, classes) -> {
+            if (!affected.contains(unit)) dependencies.putAll(classes);
+        });
+        log.debug("[增量编译]变化的源代码{}个，重新编译{}个", sources.size(), affected.size());
+
+        Map<String, JavaMemClass> javaMemClassMap = JavaBuilder.builder().dependencies(dependencies).compiler(compileSources).getJavaMemClassMap();
+
+        // 替换已经加载过的类，或者全局的动态类加载器已被清理时，需要新一代的类加载器
+        boolean newGeneration = classLoader == null || classLoader.getParent() != DynamicClassLoader.getInstance()
+                || affected.stream().anyMatch(unitClassMap::containsKey);
+
+        sourceMap.putAll(sources);
+        affected.forEach(unitClassMap::remove);
+        for (JavaMemClass javaMemClass : javaMemClassMap.values()) {
+            // 字节码需要作为后续编译的依赖保留在堆上，复制后归还直接内存
+            unitClassMap.computeIfAbsent(unitOf(javaMemClass, affected), key -> new LinkedHashMap<>()).put(javaMemClass.getClassName(), javaMemClass.getBytes());
+            javaMemClass.release();
+        }
+        updateDependencies(affected);
+
+        if (newGeneration) {
+            DynamicClassLoader next = new DynamicClassLoader(DynamicClassLoader.getInstance());
+            next.addClassMap(allClasses());
+            // 旧一代不关闭，仍在使用旧类的调用可以继续执行，不再被引用后由垃圾回收释放
+            if (classLoader != null) LoaderLeakDetector.getInstance().retire(classLoader);
+            classLoader = next;
+        } else {
+            Map<String, byte[]> classes = new LinkedHashMap<>();
+            affected.forEach(unit -> classes.putAll(unitClassMap.getOrDefault(unit, Collections.emptyMap())));
+            classLoader.addClassMap(classes);
+        }
+        return affected;
+    }
+
+    /**
+     * 从当前一代的动态类加载器中加载增量编译的类。
+     *
+     * @param fullClassName 完全限定类名
+     * @return 加载的类
+     */
+    public Class<?> load(String fullClassName) {
+        DynamicClassLoader current = classLoader;
+        if (current == null) throw new LoaderRuntimeException("尚未增量编译任何类: " + fullClassName);
+        try {
+            return current.loadClass(fullClassName);
+        } catch (ClassNotFoundException e) {
+            throw new LoaderRuntimeException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 获取直接或间接依赖指定源代码的其他源代码。
+     *
+     * @param units 源代码对应的完全限定类名集合
+     * @return 依赖它们的源代码集合，不包括传入的源代码本身
+     */
+    public synchronized Set<String> dependents(Set<String> units) {
+        Set<String> result = new LinkedHashSet<>();
+        Deque<String> queue = new ArrayDeque<>(units);
+        while (!queue.isEmpty()) {
+            String unit = queue.poll();
+            dependencyMap.forEach((dependent, dependencies) -> {
+                if (dependencies.contains(unit) && !units.contains(dependent) && result.add(dependent)) queue.add(dependent);
+            });
+        }
+        return result;
+    }
+
+    /**
+     * 获取源代码直接依赖的其他源代码。
+     *
+     * @param unit 源代码对应的完全限定类名
+     * @return 依赖的源代码集合
+     */
+    public synchronized Set<String> dependencies(String unit) {
+        return Collections.unmodifiableSet(dependencyMap.getOrDefault(unit, Collections.emptySet()));
+    }
+
+    /**
+     * 清空记录的源代码和依赖关系。
+     */
+    public synchronized void clear() {
+        sourceMap.clear();
+        unitClassMap.clear();
+        dependencyMap.clear();
+        classLoader = null;
+    }
+
+    /**
+     * 重新扫描受影响的源代码的字节码，更新依赖关系。
+     */
+    private void updateDependencies(Set<String> affected) {
+        Map<String, String> classUnitMap = new HashMap<>();
+        unitClassMap.forEach((unit, classes) -> classes.keySet().forEach(name -> classUnitMap.put(name, unit)));
+        for (String unit : affected) {
+            Set<String> unitDependencies = new HashSet<>();
+            for (byte[] classData : unitClassMap.getOrDefault(unit, Collections.emptyMap()).values()) {
+                for (String referenced : ClassDependencyScanner.referencedClasses(classData)) {
+                    String referencedUnit = classUnitMap.get(referenced);
+                    if (referencedUnit != null && !referencedUnit.equals(unit)) unitDependencies.add(referencedUnit);
+                }
+            }
+            dependencyMap.put(unit, unitDependencies);
+        }
+    }
+
+    /**
+     * 确定类文件所属的源代码。编译结果来自缓存且无法按类名推断时（例如同一文件中的非public顶层类），
+     * 归属到同一个包中的第一个源代码。
+     */
+    private static String unitOf(JavaMemClass javaMemClass, Set<String> units) {
+        if (javaMemClass.getSourceClassName() != null) return javaMemClass.getSourceClassName();
+        String name = javaMemClass.getClassName();
+        String packageName = name.substring(0, Math.max(name.lastIndexOf('.'), 0));
+        for (String unit : units) {
+            if (unit.substring(0, Math.max(unit.lastIndexOf('.'), 0)).equals(packageName)) return unit;
+        }
+        return units.iterator().next();
+    }
+
+    private Map<String, byte[]> allClasses() {
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        unitClassMap.values().forEach(classes::putAll);
+        return classes;
+    }
+}
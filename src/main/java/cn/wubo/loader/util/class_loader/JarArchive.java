@@ -0,0 +1,463 @@
+package cn.wubo.loader.util.class_loader;
+
+import cn.wubo.loader.util.exception.LoaderRuntimeException;
+import lombok.Getter;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * 只读的jar，通过内存映射直接读取中央目录，支持内存中的jar和嵌套jar。
+ * 未压缩的条目直接返回映射内存的切片，不校验签名，也不处理多版本jar。
+ */
+public class JarArchive {
+
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+
+    private static final int END_SIZE = 22;
+
+    private static final int STORED = 0;
+
+    private static final int DEFLATED = 8;
+
+    /**
+     * 嵌套jar路径的分隔符，例如app.jar!/BOOT-INF/lib/plugin.jar
+     */
+    private static final String SEPARATOR = "!/";
+
+    /**
+     * 内存中的jar本身的URL不能打开，只用于生成条目的URL和类的CodeSource
+     */
+    private static final URLStreamHandler ARCHIVE_HANDLER = new URLStreamHandler() {
+        @Override
+        protected URLConnection openConnection(URL u) throws IOException {
+            throw new IOException("内存中的jar不能通过URL打开: " + u);
+        }
+    };
+
+    /**
+     * 复用的解压器数量上限
+     */
+    private static final int INFLATER_POOL_SIZE = 16;
+
+    /**
+     * 复用的解压器，创建解压器需要分配本地内存，代价远高于解压一个类文件
+     */
+    private static final Deque<Inflater> inflaterPool = new ConcurrentLinkedDeque<>();
+
+    /**
+     * jar的位置，用于生成资源的URL和类的CodeSource
+     */
+    @Getter
+    private final URL url;
+
+    /**
+     * jar的内容
+     */
+    private final ByteBuffer data;
+
+    /**
+     * 条目名称与条目的映射
+     */
+    private final Map<String, Entry> entryMap;
+
+    /**
+     * 条目所在的目录集合，建立包索引时使用
+     */
+    @Getter
+    private final Set<String> directories;
+
+    /**
+     * jar的清单，没有清单时为null
+     */
+    @Getter
+    private final Manifest manifest;
+
+    /**
+     * 读取条目URL的处理器，磁盘上的jar使用JDK的jar:协议，为null
+     */
+    private final URLStreamHandler entryHandler;
+
+    /**
+     * 构造函数，解析jar的中央目录。jar的内容不会被复制，之后不能再修改。
+     * 位置不是磁盘上的文件时，条目的URL由该jar自身读取。
+     *
+     * @param url  jar的位置
+     * @param data jar的内容
+     */
+    public JarArchive(URL url, ByteBuffer data) {
+        this.url = url;
+        this.entryHandler = "file".equals(url.getProtocol()) ? null : new EntryHandler();
+        this.data = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+        this.entryMap = readCentralDirectory(this.data);
+        Set<String> directorySet = new HashSet<>();
+        for (String name : entryMap.keySet()) {
+            directorySet.add(directoryOf(name));
+        }
+        this.directories = Collections.unmodifiableSet(directorySet);
+        this.manifest = readManifest();
+    }
+
+    /**
+     * 通过内存映射打开jar文件，映射建立后文件通道即关闭，映射的内存在不再被引用后释放。
+     *
+     * @param path jar文件路径
+     * @return jar
+     */
+    public static JarArchive open(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // 单个映射的缓冲区最大为2GB
+            if (channel.size() > Integer.MAX_VALUE) throw new LoaderRuntimeException("不支持超过2GB的jar: " + path);
+            return new JarArchive(path.toAbsolutePath().toUri().toURL(), channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            throw new LoaderRuntimeException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 打开jar文件，路径中包含!/时依次打开嵌套的jar，例如app.jar!/BOOT-INF/lib/plugin.jar。
+     *
+     * @param path jar文件路径
+     * @return jar
+     */
+    public static JarArchive open(String path) {
+        String[] parts = path.split(SEPARATOR);
+        JarArchive archive = open(Paths.get(parts[0]));
+        for (int i = 1; i < parts.length; i++) {
+            archive = archive.nested(parts[i]);
+        }
+        return archive;
+    }
+
+    /**
+     * 使用内存中的jar，不写入磁盘。
+     *
+     * @param name  jar的名称，用于生成条目的URL，例如plugin.jar
+     * @param bytes jar的内容
+     * @return jar
+     */
+    public static JarArchive of(String name, byte[] bytes) {
+        return of(name, ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * 使用内存中的jar，不写入磁盘，jar的内容不会被复制，之后不能再修改。
+     *
+     * @param name   jar的名称，用于生成条目的URL，例如plugin.jar
+     * @param buffer jar的内容，从当前位置到limit
+     * @return jar
+     */
+    public static JarArchive of(String name, ByteBuffer buffer) {
+        return new JarArchive(newUrl("memory", "/" + name), buffer);
+    }
+
+    /**
+     * 打开嵌套在当前jar中的jar，例如Spring Boot可执行jar中BOOT-INF/lib下的jar。
+     * 未压缩存储的jar直接使用外层jar的内存，压缩存储的jar解压到内存中。
+     *
+     * @param name 条目名称，例如BOOT-INF/lib/plugin.jar
+     * @return jar
+     */
+    public JarArchive nested(String name) {
+        ByteBuffer content = read(name);
+        if (content == null) throw new LoaderRuntimeException("jar中不存在条目: " + url + SEPARATOR + name);
+        return new JarArchive(newUrl("jar", url + SEPARATOR + name), content);
+    }
+
+    /**
+     * 获取所有条目的名称。
+     *
+     * @return 条目名称集合
+     */
+    public Set<String> getEntryNames() {
+        return Collections.unmodifiableSet(entryMap.keySet());
+    }
+
+    /**
+     * 判断是否包含条目。
+     *
+     * @param name 条目名称，例如cn/wubo/Test.class
+     * @return 包含时返回true
+     */
+    public boolean contains(String name) {
+        return entryMap.containsKey(name);
+    }
+
+    /**
+     * 读取条目的内容，未压缩的条目返回映射内存的只读切片，不复制数据。
+     *
+     * @param name 条目名称
+     * @return 条目的内容，条目不存在时返回null
+     */
+    public ByteBuffer read(String name) {
+        Entry entry = entryMap.get(name);
+        if (entry == null) return null;
+        int localOffset = checkedInt(entry.localOffset);
+        if (data.getInt(localOffset) != LOCAL_SIGNATURE) throw new LoaderRuntimeException("jar条目损坏: " + url + "!/" + name);
+        int dataOffset = localOffset + 30 + Short.toUnsignedInt(data.getShort(localOffset + 26)) + Short.toUnsignedInt(data.getShort(localOffset + 28));
+        ByteBuffer compressed = data.slice(dataOffset, checkedInt(entry.compressedSize));
+        if (entry.method == STORED) return compressed.asReadOnlyBuffer();
+        if (entry.method != DEFLATED) throw new LoaderRuntimeException("不支持的压缩方式" + entry.method + ": " + url + "!/" + name);
+        byte[] bytes = new byte[checkedInt(entry.size)];
+        Inflater inflater = inflaterPool.poll();
+        if (inflater == null) inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            int count = 0;
+            while (count < bytes.length && !inflater.finished()) {
+                int inflated = inflater.inflate(bytes, count, bytes.length - count);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                count += inflated;
+            }
+            if (count != bytes.length) throw new LoaderRuntimeException("jar条目解压不完整: " + url + "!/" + name);
+        } catch (DataFormatException e) {
+            throw new LoaderRuntimeException("jar条目解压失败: " + url + "!/" + name, e);
+        } finally {
+            releaseInflater(inflater);
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * 读取条目的内容为字节数组。
+     *
+     * @param name 条目名称
+     * @return 条目的内容，条目不存在时返回null
+     */
+    public byte[] readBytes(String name) {
+        ByteBuffer buffer = read(name);
+        if (buffer == null) return null;
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.remaining() == buffer.array().length) return buffer.array();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * 获取条目的URL。
+     *
+     * @param name 条目名称
+     * @return 条目的URL，条目不存在时返回null
+     */
+    public URL getEntryUrl(String name) {
+        if (!entryMap.containsKey(name)) return null;
+        if (entryHandler != null) return newUrl("jar", url + SEPARATOR + name, entryHandler);
+        try {
+            return new URL("jar:" + url + SEPARATOR + name);
+        } catch (MalformedURLException e) {
+            throw new LoaderRuntimeException(e.getMessage(), e);
+        }
+    }
+
+    private static URL newUrl(String protocol, String file) {
+        return newUrl(protocol, file, ARCHIVE_HANDLER);
+    }
+
+    /**
+     * 指定处理器创建URL，不经过协议的解析，内存中的jar和嵌套jar的URL不能由JDK的jar:协议解析
+     */
+    private static URL newUrl(String protocol, String file, URLStreamHandler handler) {
+        try {
+            return new URL(protocol, null, -1, file, handler);
+        } catch (MalformedURLException e) {
+            throw new LoaderRuntimeException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 条目所在的目录（包名以/分隔），目录条目本身（以/结尾）归入上一级目录，根目录下的条目为空字符串。
+     *
+     * @param name 条目名称
+     * @return 目录
+     */
+    public static String directoryOf(String name) {
+        int end = name.endsWith("/") ? name.length() - 1 : name.length();
+        int index = name.lastIndexOf('/', end - 1);
+        return index < 0 ? "" : name.substring(0, index);
+    }
+
+    private static void releaseInflater(Inflater inflater) {
+        if (inflaterPool.size() < INFLATER_POOL_SIZE) {
+            inflater.reset();
+            inflaterPool.offer(inflater);
+        } else {
+            inflater.end();
+        }
+    }
+
+    private Manifest readManifest() {
+        byte[] bytes = readBytes("META-INF/MANIFEST.MF");
+        if (bytes == null) return null;
+        try {
+            return new Manifest(new ByteArrayInputStream(bytes));
+        } catch (IOException e) {
+            throw new LoaderRuntimeException(e.getMessage(), e);
+        }
+    }
+
+    private Map<String, Entry> readCentralDirectory(ByteBuffer buffer) {
+        int end = findEnd(buffer);
+        long entryCount = Short.toUnsignedInt(buffer.getShort(end + 10));
+        long directoryOffset = Integer.toUnsignedLong(buffer.getInt(end + 16));
+        // ZIP64的中央目录位置记录在ZIP64结束记录中
+        if (end >= 20 && buffer.getInt(end - 20) == ZIP64_LOCATOR_SIGNATURE) {
+            int zip64End = checkedInt(buffer.getLong(end - 20 + 8));
+            if (buffer.getInt(zip64End) != ZIP64_END_SIGNATURE) throw new LoaderRuntimeException("jar的ZIP64结束记录损坏: " + url);
+            entryCount = buffer.getLong(zip64End + 32);
+            directoryOffset = buffer.getLong(zip64End + 48);
+        }
+        // 每个中央目录条目至少46字节
+        if (entryCount < 0 || entryCount > buffer.limit() / 46) throw new LoaderRuntimeException("jar的中央目录损坏: " + url);
+        Map<String, Entry> entries = new HashMap<>((int) (entryCount / 0.75) + 1);
+        int offset = checkedInt(directoryOffset);
+        for (long i = 0; i < entryCount; i++) {
+            if (buffer.getInt(offset) != CENTRAL_SIGNATURE) throw new LoaderRuntimeException("jar的中央目录损坏: " + url);
+            int method = Short.toUnsignedInt(buffer.getShort(offset + 10));
+            long compressedSize = Integer.toUnsignedLong(buffer.getInt(offset + 20));
+            long size = Integer.toUnsignedLong(buffer.getInt(offset + 24));
+            int nameLength = Short.toUnsignedInt(buffer.getShort(offset + 28));
+            int extraLength = Short.toUnsignedInt(buffer.getShort(offset + 30));
+            int commentLength = Short.toUnsignedInt(buffer.getShort(offset + 32));
+            long localOffset = Integer.toUnsignedLong(buffer.getInt(offset + 42));
+            byte[] nameBytes = new byte[nameLength];
+            buffer.get(offset + 46, nameBytes);
+            Entry entry = new Entry(method, compressedSize, size, localOffset);
+            readZip64Extra(buffer, offset + 46 + nameLength, extraLength, entry);
+            entries.put(new String(nameBytes, StandardCharsets.UTF_8), entry);
+            offset += 46 + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    /**
+     * 大小或位置超过4GB的条目，实际数值记录在ZIP64扩展字段中
+     */
+    private static void readZip64Extra(ByteBuffer buffer, int offset, int length, Entry entry) {
+        int end = offset + length;
+        while (offset + 4 <= end) {
+            int id = Short.toUnsignedInt(buffer.getShort(offset));
+            int size = Short.toUnsignedInt(buffer.getShort(offset + 2));
+            if (id == 0x0001) {
+                int position = offset + 4;
+                if (entry.size == 0xFFFFFFFFL) {
+                    entry.size = buffer.getLong(position);
+                    position += 8;
+                }
+                if (entry.compressedSize == 0xFFFFFFFFL) {
+                    entry.compressedSize = buffer.getLong(position);
+                    position += 8;
+                }
+                if (entry.localOffset == 0xFFFFFFFFL) entry.localOffset = buffer.getLong(position);
+                return;
+            }
+            offset += 4 + size;
+        }
+    }
+
+    /**
+     * ZIP64中的大小和位置是long，超过缓冲区能够表示的范围时不支持，不能截断为int
+     */
+    private int checkedInt(long value) {
+        if (value < 0 || value > Integer.MAX_VALUE) throw new LoaderRuntimeException("不支持超过2GB的jar或条目: " + url);
+        return (int) value;
+    }
+
+    /**
+     * 从尾部向前查找中央目录结束记录，记录之后最多有65535字节的注释
+     */
+    private int findEnd(ByteBuffer buffer) {
+        int limit = Math.max(buffer.limit() - END_SIZE - 0xFFFF, 0);
+        for (int offset = buffer.limit() - END_SIZE; offset >= limit; offset--) {
+            if (buffer.getInt(offset) == END_SIGNATURE) return offset;
+        }
+        throw new LoaderRuntimeException("不是有效的jar文件: " + url);
+    }
+
+    /**
+     * 读取内存中的jar和嵌套jar中条目的URL，条目名称为URL中最后一个!/之后的部分
+     */
+    private class EntryHandler extends URLStreamHandler {
+
+        @Override
+        protected URLConnection openConnection(URL u) {
+            String file = u.getFile();
+            String name = file.substring(file.lastIndexOf(SEPARATOR) + SEPARATOR.length());
+            return new URLConnection(u) {
+
+                private byte[] bytes;
+
+                @Override
+                public void connect() throws IOException {
+                    if (connected) return;
+                    bytes = readBytes(name);
+                    if (bytes == null) throw new FileNotFoundException(u.toString());
+                    connected = true;
+                }
+
+                @Override
+                public InputStream getInputStream() throws IOException {
+                    connect();
+                    return new ByteArrayInputStream(bytes);
+                }
+
+                @Override
+                public long getContentLengthLong() {
+                    Entry entry = entryMap.get(name);
+                    return entry == null ? -1 : entry.size;
+                }
+            };
+        }
+    }
+
+    /**
+     * 中央目录中的条目
+     */
+    private static class Entry {
+
+        private final int method;
+
+        private long compressedSize;
+
+        private long size;
+
+        private long localOffset;
+
+        Entry(int method, long compressedSize, long size, long localOffset) {
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localOffset = localOffset;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package cn.wubo.loader.util.class_loader;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * jar的包索引，键为条目所在的目录，值为包含该目录下条目的jar，按添加顺序查找。
+ */
+public class JarIndex {
+
+    private static final JarArchive[] EMPTY = new JarArchive[0];
+
+    /**
+     * 目录与包含该目录下条目的jar的映射
+     */
+    private final Map<String, JarArchive[]> packageMap = new ConcurrentHashMap<>();
+
+    /**
+     * 按添加顺序排列的jar
+     */
+    private final List<JarArchive> archives = new CopyOnWriteArrayList<>();
+
+    /**
+     * 添加jar并索引其中的条目。
+     *
+     * @param archive jar
+     */
+    public synchronized void add(JarArchive archive) {
+        for (String directory : archive.getDirectories()) {
+            packageMap.merge(directory, new JarArchive[]{archive}, (existing, added) -> {
+                JarArchive[] merged = Arrays.copyOf(existing, existing.length + 1);
+                merged[existing.length] = archive;
+                return merged;
+            });
+        }
+        archives.add(archive);
+    }
+
+    /**
+     * 查找第一个包含条目的jar。
+     *
+     * @param name 条目名称，例如cn/wubo/Test.class
+     * @return 包含条目的jar，没有时返回null
+     */
+    public JarArchive find(String name) {
+        for (JarArchive archive : packageMap.getOrDefault(JarArchive.directoryOf(name), EMPTY)) {
+            if (archive.contains(name)) return archive;
+        }
+        return null;
+    }
+
+    /**
+     * 查找所有包含条目的jar中该条目的URL。
+     *
+     * @param name 条目名称
+     * @return 条目的URL，按jar的添加顺序排列
+     */
+    public List<URL> findAll(String name) {
+        List<URL> urls = new ArrayList<>();
+        for (JarArchive archive : packageMap.getOrDefault(JarArchive.directoryOf(name), EMPTY)) {
+            if (archive.contains(name)) urls.add(archive.getEntryUrl(name));
+        }
+        return urls;
+    }
+
+    /**
+     * 获取按添加顺序排列的jar。
+     *
+     * @return jar列表
+     */
+    public List<JarArchive> getArchives() {
+        return List.copyOf(archives);
+    }
+
+    /**
+     * 判断是否没有添加任何jar。
+     *
+     * @return 没有jar时返回true
+     */
+    public boolean isEmpty() {
+        return archives.isEmpty();
+    }
+}
@@ -1,12 +1,18 @@
 package cn.wubo.loader.util.class_loader;
 
 import cn.wubo.loader.util.exception.LoaderRuntimeException;
+import cn.wubo.loader.util.metrics.LoaderMetrics;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.tools.*;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 @Slf4j
 public class JavaBuilder {
@@ -16,21 +22,24 @@ public class JavaBuilder {
     private DiagnosticCollector<JavaFileObject> diagnosticCollector;
     // 编译结果输出的writer
     private Writer out;
-    // 内存文件管理器，用于在内存中管理编译后的类文件
-    private MemFileManager memFileManager;
+    // 编译后的类文件，每个JavaBuilder实例独立
+    private final Map<String, JavaMemClass> javaMemClassMap = new LinkedHashMap<>();
     // 编译选项
     private Iterable<String> options;
     // 需要编译的类名集合
     private Iterable<String> classes;
+    // 是否使用编译结果缓存
+    private boolean useCache = true;
+    // 编译时可以引用的已编译类
+    private Map<String, byte[]> dependencies = Collections.emptyMap();
 
     /**
      * JavaBuilder的构造函数。
-     * 初始化Java编译器和相关组件。
+     * 初始化Java编译器和相关组件，标准文件管理器在真正编译时才从文件管理器池中借出。
      */
     public JavaBuilder() {
-        this.compiler = ToolProvider.getSystemJavaCompiler();
+        this.compiler = FileManagerPool.getInstance().getCompiler();
         this.diagnosticCollector = new DiagnosticCollector<>();
-        this.memFileManager = new MemFileManager(compiler.getStandardFileManager(diagnosticCollector, null, null));
     }
 
     /**
@@ -43,30 +52,155 @@ public class JavaBuilder {
         return new JavaBuilder();
     }
 
+    /**
+     * 设置编译选项，例如"-parameters"。
+     *
+     * @param options 编译选项
+     * @return 当前JavaBuilder实例，支持方法链调用
+     */
+    public JavaBuilder options(Iterable<String> options) {
+        this.options = options;
+        return this;
+    }
+
+    /**
+     * 设置是否使用编译结果缓存，默认使用。
+     *
+     * @param useCache 是否使用缓存
+     * @return 当前JavaBuilder实例，支持方法链调用
+     */
+    public JavaBuilder useCache(boolean useCache) {
+        this.useCache = useCache;
+        return this;
+    }
+
+    /**
+     * 设置编译时可以引用的已编译类，例如之前动态编译、不在类路径中的类。
+     *
+     * @param dependencies 已编译类的类名与字节码的映射
+     * @return 当前JavaBuilder实例，支持方法链调用
+     */
+    public JavaBuilder dependencies(Map<String, byte[]> dependencies) {
+        this.dependencies = dependencies;
+        return this;
+    }
+
     /**
      * 编译给定的Java源代码。
+     * 如果相同的类名、源码和编译选项已经编译过，则直接使用缓存或磁盘存储中的字节码，不再执行编译。
      *
      * @param javaSourceCode Java源代码字符串
      * @param fullClassName  完全限定类名
      * @return 当前JavaBuilder实例，支持方法链调用
      */
     public JavaBuilder compiler(String javaSourceCode, String fullClassName) {
+        return compiler(Collections.singletonMap(fullClassName, javaSourceCode));
+    }
+
+    /**
+     * 在同一个编译任务中批量编译多个Java源代码，源代码之间可以互相引用。
+     * 编译结果通过{@link #getJavaMemClassMap()}获取，每个源代码的诊断信息通过{@link #getDiagnostics()}获取。
+     *
+     * @param sources 完全限定类名与Java源代码的映射
+     * @return 当前JavaBuilder实例，支持方法链调用
+     */
+    public JavaBuilder compiler(Map<String, String> sources) {
+        // 批量编译时以排序后的类名作为存储中的记录名
+        String unitName = String.join(",", new TreeSet<>(sources.keySet()));
+        long start = LoaderMetrics.start();
+        String cacheKey = null;
+        if (useCache) {
+            cacheKey = JavaClassCache.key(sources, options, dependencies);
+            Map<String, byte[]> cached = JavaClassCache.getInstance().get(cacheKey);
+            JavaClassStore store = JavaClassStore.getInstance();
+            if (cached == null && store != null) {
+                // 内存缓存未命中时尝试从磁盘存储中读取
+                cached = store.get(unitName, cacheKey);
+                if (cached != null) JavaClassCache.getInstance().putOwned(cacheKey, cached);
+            } else if (cached != null && store != null && !store.contains(unitName, cacheKey)) {
+                // 开启存储前已经缓存在内存中的编译结果，补写到磁盘存储
+                store.put(unitName, cacheKey, cached);
+            }
+            if (cached != null) {
+                log.debug("命中编译缓存: {}", unitName);
+                // 缓存中的字节数组不会被修改，直接包装，不再复制
+                cached.forEach((name, bytes) -> javaMemClassMap.put(name, new JavaMemClass(name, JavaFileObject.Kind.CLASS, bytes)));
+                assignSourceClassNames(sources.keySet());
+                LoaderMetrics.compiled(sources.size(), true, true, start);
+                return this;
+            }
+        }
         log.debug("开始执行编译");
-        JavaMemSource file = new JavaMemSource(fullClassName, javaSourceCode);
-        Iterable<? extends JavaFileObject> compilationUnits = Collections.singletonList(file);
+        List<JavaMemSource> compilationUnits = new ArrayList<>(sources.size());
+        sources.forEach((fullClassName, javaSourceCode) -> compilationUnits.add(new JavaMemSource(fullClassName, javaSourceCode)));
         log.debug("获取编译任务");
-        JavaCompiler.CompilationTask task = compiler.getTask(out, memFileManager, diagnosticCollector, options, classes, compilationUnits);
-        log.debug("执行编译");
-        boolean result = task.call();
+        // 复用池中的标准文件管理器，编译输出写入本次编译独立的内存文件管理器
+        FileManagerPool fileManagerPool = FileManagerPool.getInstance();
+        StandardJavaFileManager standardFileManager = fileManagerPool.borrow();
+        boolean result;
+        try {
+            MemFileManager memFileManager = new MemFileManager(standardFileManager, dependencies, options);
+            JavaCompiler.CompilationTask task = compiler.getTask(out, memFileManager, diagnosticCollector, options, classes, compilationUnits);
+            log.debug("执行编译");
+            result = task.call();
+            javaMemClassMap.putAll(memFileManager.getJavaMemClassMap());
+        } finally {
+            fileManagerPool.release(standardFileManager);
+        }
         if (!result) {
-            String errorMessage = diagnosticCollector.getDiagnostics().stream().map(Object::toString).reduce("", (acc, x) -> acc + "\r\n" + x);
+            StringBuilder errorMessage = new StringBuilder();
+            getDiagnostics().forEach((fullClassName, diagnostics) -> {
+                errorMessage.append("\r\n").append(fullClassName).append(":");
+                diagnostics.forEach(diagnostic -> errorMessage.append("\r\n").append(diagnostic));
+            });
             log.debug("编译失败: {}", errorMessage);
+            // 编译失败时已经输出的类不会再被使用，归还直接内存
+            javaMemClassMap.values().forEach(JavaMemClass::release);
+            javaMemClassMap.clear();
+            LoaderMetrics.compiled(sources.size(), false, false, start);
             throw new LoaderRuntimeException("编译失败: " + errorMessage);
         }
         log.debug("编译成功");
+        LoaderMetrics.compiled(sources.size(), false, true, start);
+        if (cacheKey != null) {
+            Map<String, byte[]> compiledClasses = new LinkedHashMap<>();
+            javaMemClassMap.forEach((name, javaMemClass) -> compiledClasses.put(name, javaMemClass.getBytes()));
+            JavaClassCache.getInstance().putOwned(cacheKey, compiledClasses);
+            JavaClassStore store = JavaClassStore.getInstance();
+            if (store != null) store.put(unitName, cacheKey, compiledClasses);
+        }
         return this;
     }
 
+    /**
+     * 为缓存中恢复的类文件推断生成它的源代码：类名与源代码类名相同，或者是其内部类。
+     *
+     * @param sourceClassNames 源代码对应的完全限定类名集合
+     */
+    private void assignSourceClassNames(Set<String> sourceClassNames) {
+        for (JavaMemClass javaMemClass : javaMemClassMap.values()) {
+            String name = javaMemClass.getClassName();
+            int index = name.indexOf('$');
+            String outerName = index < 0 ? name : name.substring(0, index);
+            if (sourceClassNames.contains(outerName)) javaMemClass.setSourceClassName(outerName);
+        }
+    }
+
+    /**
+     * 获取按源代码分组的诊断信息，包括错误和警告。
+     * 键为源代码对应的完全限定类名，与具体源代码无关的诊断信息使用空字符串作为键。
+     *
+     * @return 类名与诊断信息列表的映射
+     */
+    public Map<String, List<Diagnostic<? extends JavaFileObject>>> getDiagnostics() {
+        Map<String, List<Diagnostic<? extends JavaFileObject>>> diagnosticMap = new LinkedHashMap<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnosticCollector.getDiagnostics()) {
+            String fullClassName = diagnostic.getSource() instanceof JavaMemSource javaMemSource ? javaMemSource.getFullClassName() : "";
+            diagnosticMap.computeIfAbsent(fullClassName, key -> new ArrayList<>()).add(diagnostic);
+        }
+        return diagnosticMap;
+    }
+
     /**
      * 获取编译后的类的映射。
      * 这个映射将类名映射到内存中的类对象，可以用于后续的类加载和使用。
@@ -74,7 +208,7 @@ public class JavaBuilder {
      * @return 编译后的类的映射
      */
     public Map<String, JavaMemClass> getJavaMemClassMap() {
-        return memFileManager.getJavaMemClassMap();
+        return javaMemClassMap;
     }
 }
 
@@ -0,0 +1,232 @@
+package cn.wubo.loader.util.class_loader;
+
+import cn.wubo.loader.util.exception.LoaderRuntimeException;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 编译结果缓存，以源码、类名和编译选项的摘要作为键，缓存编译后的字节码。
+ * 缓存容量有上限，超出时按照LRU策略淘汰最久未使用的条目。
+ */
+public class JavaClassCache {
+
+    /**
+     * 默认的缓存容量
+     */
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    /**
+     * 单例模式，获取编译结果缓存的实例。
+     */
+    @Getter
+    private static final JavaClassCache instance = new JavaClassCache(DEFAULT_MAX_SIZE);
+
+    /**
+     * 按访问顺序排列的缓存映射，键为摘要，值为类名与字节码的映射。
+     */
+    private final LinkedHashMap<String, Map<String, byte[]>> cacheMap;
+
+    /**
+     * 缓存容量上限
+     */
+    private int maxSize;
+
+    /**
+     * 命中次数
+     */
+    private final LongAdder hitCount = new LongAdder();
+
+    /**
+     * 未命中次数
+     */
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * 构造函数，初始化编译结果缓存。
+     *
+     * @param maxSize 缓存容量上限
+     */
+    public JavaClassCache(int maxSize) {
+        if (maxSize <= 0) throw new IllegalArgumentException("maxSize must be positive");
+        this.maxSize = maxSize;
+        this.cacheMap = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Map<String, byte[]>> eldest) {
+                return size() > JavaClassCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * 计算缓存键，由类名、编译选项和源码共同决定。
+     *
+     * @param fullClassName  完全限定类名
+     * @param javaSourceCode Java源代码字符串
+     * @param options        编译选项，可以为null
+     * @return SHA-256摘要的十六进制字符串
+     */
+    public static String key(String fullClassName, String javaSourceCode, Iterable<String> options) {
+        return key(Collections.singletonMap(fullClassName, javaSourceCode), options);
+    }
+
+    /**
+     * 计算批量编译的缓存键，由所有类名、源码和编译选项共同决定，与源码的传入顺序无关。
+     *
+     * @param sources 完全限定类名与Java源代码的映射
+     * @param options 编译选项，可以为null
+     * @return SHA-256摘要的十六进制字符串
+     */
+    public static String key(Map<String, String> sources, Iterable<String> options) {
+        return key(sources, options, Collections.emptyMap());
+    }
+
+    /**
+     * 计算引用了已编译类的批量编译的缓存键，依赖类的字节码变化时缓存键随之变化。
+     *
+     * @param sources      完全限定类名与Java源代码的映射
+     * @param options      编译选项，可以为null
+     * @param dependencies 编译时引用的已编译类的类名与字节码的映射
+     * @return SHA-256摘要的十六进制字符串
+     */
+    public static String key(Map<String, String> sources, Iterable<String> options, Map<String, byte[]> dependencies) {
+        MessageDigest digest = newDigest();
+        // 每一部分先写入数量，避免选项、源码和依赖之间的边界移动后产生相同的摘要
+        List<String> optionList = new ArrayList<>();
+        if (options != null) options.forEach(optionList::add);
+        updateLength(digest, optionList.size());
+        for (String option : optionList) update(digest, option);
+        updateLength(digest, sources.size());
+        for (Map.Entry<String, String> entry : new TreeMap<>(sources).entrySet()) {
+            update(digest, entry.getKey());
+            update(digest, entry.getValue());
+        }
+        updateLength(digest, dependencies.size());
+        for (Map.Entry<String, byte[]> entry : new TreeMap<>(dependencies).entrySet()) {
+            update(digest, entry.getKey());
+            update(digest, entry.getValue());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * 根据键获取缓存的字节码，同时更新命中和未命中计数。
+     *
+     * @param key 缓存键
+     * @return 类名与字节码的映射，未命中时返回null
+     */
+    public Map<String, byte[]> get(String key) {
+        Map<String, byte[]> classes;
+        synchronized (cacheMap) {
+            classes = cacheMap.get(key);
+        }
+        if (classes == null) missCount.increment();
+        else hitCount.increment();
+        return classes;
+    }
+
+    /**
+     * 将编译结果放入缓存。
+     *
+     * @param key     缓存键
+     * @param classes 类名与字节码的映射
+     */
+    public void put(String key, Map<String, byte[]> classes) {
+        Map<String, byte[]> copy = new LinkedHashMap<>();
+        classes.forEach((name, bytes) -> copy.put(name, bytes.clone()));
+        putOwned(key, copy);
+    }
+
+    /**
+     * 将新生成的编译结果放入缓存，字节数组不复制，由缓存持有，调用方之后不能再修改。
+     *
+     * @param key     缓存键
+     * @param classes 类名与字节码的映射
+     */
+    void putOwned(String key, Map<String, byte[]> classes) {
+        synchronized (cacheMap) {
+            cacheMap.put(key, Collections.unmodifiableMap(classes));
+        }
+    }
+
+    /**
+     * 调整缓存容量上限，超出部分会在下一次写入时淘汰。
+     *
+     * @param maxSize 缓存容量上限
+     */
+    public void setMaxSize(int maxSize) {
+        if (maxSize <= 0) throw new IllegalArgumentException("maxSize must be positive");
+        synchronized (cacheMap) {
+            this.maxSize = maxSize;
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * 当前缓存的条目数
+     *
+     * @return 条目数
+     */
+    public int size() {
+        synchronized (cacheMap) {
+            return cacheMap.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * 清空缓存并重置计数。
+     */
+    public void clear() {
+        synchronized (cacheMap) {
+            cacheMap.clear();
+        }
+        hitCount.reset();
+        missCount.reset();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new LoaderRuntimeException(e.getMessage(), e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        update(digest, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void update(MessageDigest digest, byte[] bytes) {
+        // 写入长度前缀，避免不同字段拼接后产生相同的摘要
+        updateLength(digest, bytes.length);
+        digest.update(bytes);
+    }
+
+    private static void updateLength(MessageDigest digest, int length) {
+        digest.update((byte) (length >>> 24));
+        digest.update((byte) (length >>> 16));
+        digest.update((byte) (length >>> 8));
+        digest.update((byte) length);
+    }
+}
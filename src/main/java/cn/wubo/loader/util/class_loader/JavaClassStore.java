@@ -0,0 +1,392 @@
+package cn.wubo.loader.util.class_loader;
+
+import cn.wubo.loader.util.exception.LoaderRuntimeException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * 编译结果的磁盘存储，所有记录追加写入同一个数据文件，用于应用重启后快速恢复动态编译的类。
+ * 恢复时没有源码，只校验JDK版本，源码变化后需要调用{@link #invalidate}。
+ */
+@Slf4j
+public class JavaClassStore implements Closeable {
+
+    /**
+     * 数据文件名
+     */
+    public static final String DATA_FILE_NAME = "classes.dat";
+
+    /**
+     * 记录的魔数
+     */
+    private static final int MAGIC = 0x4C445543;
+
+    /**
+     * 记录头长度，包括魔数和记录体长度
+     */
+    private static final int HEADER_LENGTH = 8;
+
+    /**
+     * 记录尾部CRC32校验值的长度
+     */
+    private static final int CRC_LENGTH = 8;
+
+    /**
+     * 当前运行的JDK版本，用于判断记录是否过期
+     */
+    private static final String JAVA_VERSION = Runtime.version().toString();
+
+    /**
+     * 全局使用的存储实例，未开启存储时为null
+     */
+    private static volatile JavaClassStore instance;
+
+    /**
+     * 数据文件路径
+     */
+    private final Path dataFile;
+
+    /**
+     * 数据文件通道
+     */
+    private FileChannel channel;
+
+    /**
+     * 记录索引，键为记录的类名，值为最新一条记录的位置信息
+     */
+    private final Map<String, IndexEntry> index = new LinkedHashMap<>();
+
+    /**
+     * 类索引，键为记录中包含的类名，值为包含该类的最新记录的类名
+     */
+    private final Map<String, String> classIndex = new LinkedHashMap<>();
+
+    /**
+     * 构造函数，打开或创建存储目录下的数据文件并重建索引。
+     *
+     * @param directory 存储目录
+     */
+    public JavaClassStore(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            this.dataFile = directory.resolve(DATA_FILE_NAME);
+            this.channel = FileChannel.open(dataFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            rebuildIndex();
+        } catch (IOException e) {
+            throw new LoaderRuntimeException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 获取全局使用的存储实例。
+     *
+     * @return 存储实例，未开启存储时为null
+     */
+    public static JavaClassStore getInstance() {
+        return instance;
+    }
+
+    /**
+     * 设置全局使用的存储实例，JavaBuilder编译时会读写该实例。
+     *
+     * @param store 存储实例，传入null表示关闭存储
+     */
+    public static void setInstance(JavaClassStore store) {
+        instance = store;
+    }
+
+    /**
+     * 根据类名和源码摘要读取编译结果。
+     *
+     * @param fullClassName 完全限定类名，批量编译时为排序后以逗号连接的类名
+     * @param sourceHash    源码摘要，参考{@link JavaClassCache#key}
+     * @return 类名与字节码的映射，记录不存在或已过期时返回null
+     */
+    public synchronized Map<String, byte[]> get(String fullClassName, String sourceHash) {
+        IndexEntry entry = index.get(fullClassName);
+        if (entry == null) return null;
+        if (!entry.sourceHash.equals(sourceHash) || !entry.javaVersion.equals(JAVA_VERSION)) {
+            log.debug("[字节码存储]记录已过期: {}", fullClassName);
+            return null;
+        }
+        return read(entry).classes;
+    }
+
+    /**
+     * 判断是否存在未过期的编译结果记录。
+     *
+     * @param fullClassName 完全限定类名
+     * @param sourceHash    源码摘要
+     * @return 存在未过期记录时返回true
+     */
+    public synchronized boolean contains(String fullClassName, String sourceHash) {
+        IndexEntry entry = index.get(fullClassName);
+        return entry != null && entry.sourceHash.equals(sourceHash) && entry.javaVersion.equals(JAVA_VERSION);
+    }
+
+    /**
+     * 追加写入一条编译结果记录。
+     *
+     * @param fullClassName 完全限定类名
+     * @param sourceHash    源码摘要
+     * @param classes       类名与字节码的映射
+     */
+    public synchronized void put(String fullClassName, String sourceHash, Map<String, byte[]> classes) {
+        try {
+            long offset = channel.size();
+            channel.write(ByteBuffer.wrap(encode(fullClassName, sourceHash, JAVA_VERSION, classes)), offset);
+            putIndex(fullClassName, new IndexEntry(offset, sourceHash, JAVA_VERSION, Set.copyOf(classes.keySet())));
+        } catch (IOException e) {
+            throw new LoaderRuntimeException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 使包含指定类的记录失效，失效标记追加写入数据文件，重启后仍然有效。
+     *
+     * @param fullClassName 完全限定类名
+     */
+    public synchronized void invalidate(String fullClassName) {
+        String owner = classIndex.getOrDefault(fullClassName, fullClassName);
+        if (!index.containsKey(owner)) return;
+        put(owner, "", Map.of());
+    }
+
+    /**
+     * 将所有未过期的记录直接加载到动态类加载器中，不需要调用javac。
+     * 由于加载时没有源码，只校验JDK版本，源码已经变化的类需要先调用{@link #invalidate}。
+     *
+     * @param classLoader 动态类加载器
+     * @return 加载的类的数量
+     */
+    public synchronized int restore(DynamicClassLoader classLoader) {
+        int count = 0;
+        for (Map.Entry<String, IndexEntry> indexEntry : index.entrySet()) {
+            if (!indexEntry.getValue().javaVersion.equals(JAVA_VERSION)) {
+                log.debug("[字节码存储]JDK版本变化，跳过记录: {}", indexEntry.getKey());
+                continue;
+            }
+            if (indexEntry.getValue().classNames.stream().noneMatch(name -> isOwner(name, indexEntry.getKey()))) continue;
+            for (Map.Entry<String, byte[]> classEntry : read(indexEntry.getValue()).classes.entrySet()) {
+                if (!isOwner(classEntry.getKey(), indexEntry.getKey())) continue;
+                classLoader.addClassMap(classEntry.getKey(), classEntry.getValue());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 压缩数据文件，只保留每个类最新且未过期的记录。
+     */
+    public synchronized void compact() {
+        Path compactFile = dataFile.resolveSibling(DATA_FILE_NAME + ".compact");
+        Map<String, IndexEntry> compactIndex = new LinkedHashMap<>();
+        try (FileChannel out = FileChannel.open(compactFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (Map.Entry<String, IndexEntry> indexEntry : index.entrySet()) {
+                IndexEntry entry = indexEntry.getValue();
+                if (!entry.javaVersion.equals(JAVA_VERSION)) continue;
+                if (entry.classNames.stream().noneMatch(name -> isOwner(name, indexEntry.getKey()))) continue;
+                StoreRecord entryRecord = read(entry);
+                long offset = out.position();
+                out.write(ByteBuffer.wrap(encode(indexEntry.getKey(), entry.sourceHash, entry.javaVersion, entryRecord.classes)));
+                compactIndex.put(indexEntry.getKey(), new IndexEntry(offset, entry.sourceHash, entry.javaVersion, entry.classNames));
+            }
+            out.force(true);
+        } catch (IOException e) {
+            throw new LoaderRuntimeException(e.getMessage(), e);
+        }
+        IOException failure = null;
+        try {
+            channel.close();
+            Files.move(compactFile, dataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            failure = e;
+        }
+        // 无论替换是否成功都重新打开数据文件，替换失败时继续使用原来的数据文件和索引
+        try {
+            channel = FileChannel.open(dataFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            if (failure != null) e.addSuppressed(failure);
+            throw new LoaderRuntimeException(e.getMessage(), e);
+        }
+        if (failure != null) {
+            try {
+                Files.deleteIfExists(compactFile);
+            } catch (IOException e) {
+                failure.addSuppressed(e);
+            }
+            throw new LoaderRuntimeException(failure.getMessage(), failure);
+        }
+        index.clear();
+        index.putAll(compactIndex);
+        classIndex.values().removeIf(fullClassName -> !index.containsKey(fullClassName));
+    }
+
+    /**
+     * 当前索引中的类的数量
+     *
+     * @return 类的数量
+     */
+    public synchronized int size() {
+        return classIndex.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            channel.force(true);
+            channel.close();
+        } catch (IOException e) {
+            throw new LoaderRuntimeException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 扫描数据文件重建索引，遇到不完整或校验失败的记录时截断到最后一条完整记录。
+     */
+    private void rebuildIndex() throws IOException {
+        long size = channel.size();
+        long offset = 0;
+        while (offset < size) {
+            try {
+                byte[] recordBytes = readRecordBytes(offset);
+                StoreRecord entryRecord = decode(recordBytes);
+                putIndex(entryRecord.fullClassName, new IndexEntry(offset, entryRecord.sourceHash, entryRecord.javaVersion, entryRecord.classes.keySet()));
+                offset += HEADER_LENGTH + recordBytes.length + CRC_LENGTH;
+            } catch (EOFException | LoaderRuntimeException e) {
+                log.warn("[字节码存储]数据文件在{}处损坏，截断后续内容", offset);
+                channel.truncate(offset);
+                break;
+            }
+        }
+    }
+
+    /**
+     * 更新索引，新记录只接管它包含的类，其他类仍然使用原来的记录。
+     * 例如批量编译A和B后又单独编译A时，恢复时A使用单独编译的结果，B仍然使用批量编译的结果。
+     */
+    private void putIndex(String fullClassName, IndexEntry entry) {
+        IndexEntry previous = index.put(fullClassName, entry);
+        if (previous != null) {
+            for (String name : previous.classNames) {
+                if (!entry.classNames.contains(name)) classIndex.remove(name, fullClassName);
+            }
+        }
+        for (String name : entry.classNames) {
+            classIndex.put(name, fullClassName);
+        }
+    }
+
+    private boolean isOwner(String name, String fullClassName) {
+        return fullClassName.equals(classIndex.get(name));
+    }
+
+    private StoreRecord read(IndexEntry entry) {
+        try {
+            return decode(readRecordBytes(entry.offset));
+        } catch (IOException e) {
+            throw new LoaderRuntimeException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 从指定偏移量读取一条记录的记录体，并校验魔数和CRC32。
+     */
+    private byte[] readRecordBytes(long offset) throws IOException {
+        ByteBuffer header = readFully(offset, HEADER_LENGTH);
+        if (header.getInt() != MAGIC) throw new LoaderRuntimeException("[字节码存储]记录魔数不匹配");
+        int length = header.getInt();
+        if (length < 0 || offset + HEADER_LENGTH + length + CRC_LENGTH > channel.size()) throw new EOFException();
+        ByteBuffer body = readFully(offset + HEADER_LENGTH, length + CRC_LENGTH);
+        byte[] bodyBytes = new byte[length];
+        body.get(bodyBytes);
+        CRC32 crc = new CRC32();
+        crc.update(bodyBytes);
+        if (body.getLong() != crc.getValue()) throw new LoaderRuntimeException("[字节码存储]记录校验失败");
+        return bodyBytes;
+    }
+
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new EOFException();
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * 记录格式：魔数、记录体长度、记录体、记录体的CRC32校验值。
+     * 记录体依次为类名、源码摘要、JDK版本、类的数量，以及每个类的类名、字节码长度和字节码。
+     */
+    private static byte[] encode(String fullClassName, String sourceHash, String javaVersion, Map<String, byte[]> classes) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeUTF(fullClassName);
+        out.writeUTF(sourceHash);
+        out.writeUTF(javaVersion);
+        out.writeInt(classes.size());
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().length);
+            out.write(entry.getValue());
+        }
+        byte[] bodyBytes = body.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bodyBytes);
+
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(bodyBytes.length + 16);
+        DataOutputStream recordOut = new DataOutputStream(recordBytes);
+        recordOut.writeInt(MAGIC);
+        recordOut.writeInt(bodyBytes.length);
+        recordOut.write(bodyBytes);
+        recordOut.writeLong(crc.getValue());
+        return recordBytes.toByteArray();
+    }
+
+    private static StoreRecord decode(byte[] bodyBytes) throws IOException {
+        DataInputStream body = new DataInputStream(new ByteArrayInputStream(bodyBytes));
+        String fullClassName = body.readUTF();
+        String sourceHash = body.readUTF();
+        String javaVersion = body.readUTF();
+        int count = body.readInt();
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String name = body.readUTF();
+            byte[] bytes = new byte[body.readInt()];
+            body.readFully(bytes);
+            classes.put(name, bytes);
+        }
+        return new StoreRecord(fullClassName, sourceHash, javaVersion, Collections.unmodifiableMap(classes));
+    }
+
+    /**
+     * 索引条目，记录在数据文件中的偏移量、源码摘要、JDK版本和包含的类名
+     */
+    private record IndexEntry(long offset, String sourceHash, String javaVersion, Set<String> classNames) {
+    }
+
+    /**
+     * 从数据文件中读取的完整记录
+     */
+    private record StoreRecord(String fullClassName, String sourceHash, String javaVersion, Map<String, byte[]> classes) {
+    }
+}
@@ -1,20 +1,43 @@
 package cn.wubo.loader.util.class_loader;
 
+import lombok.Getter;
+import lombok.Setter;
+
 import javax.tools.SimpleJavaFileObject;
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
 
 /**
  * JavaMemClass 是为了在内存中处理Java类文件而设计的。
- * 它继承自SimpleJavaFileObject，用于表示类文件的内容。
+ * 编译输出写入{@link BytecodeBufferPool}借出的直接内存，不再需要时调用{@link #release()}归还。
  */
 public class JavaMemClass extends SimpleJavaFileObject {
 
     /**
-     * 用于存储类文件字节码的 ByteArrayOutputStream。
+     * 编译输出的初始缓冲区大小，大多数类文件不需要扩容
+     */
+    private static final int INITIAL_CAPACITY = 4096;
+
+    /**
+     * 类文件的字节码，位置为已写入的长度。编译输出使用直接内存，已有的字节码直接包装为堆内存，释放后为null
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * 类的全限定名
+     */
+    @Getter
+    private final String className;
+
+    /**
+     * 生成该类文件的源代码对应的完全限定类名，例如内部类对应其外部类所在的源代码。
      */
-    protected final ByteArrayOutputStream classByteArrayOutputStream = new ByteArrayOutputStream();
+    @Getter
+    @Setter
+    private String sourceClassName;
 
     /**
      * 构造函数初始化JavaMemClass对象。
@@ -25,25 +48,104 @@ public class JavaMemClass extends SimpleJavaFileObject {
     public JavaMemClass(String name, Kind kind) {
         super(URI.create("string:///" + name.replace('.', '/')
                 + kind.extension), kind);
+        this.className = name;
     }
 
     /**
-     * 获取类文件的字节码。
+     * 构造函数，使用已有的字节码初始化JavaMemClass对象，例如从缓存中恢复的编译结果。字节码数组不会被复制，之后不能再修改。
+     *
+     * @param name  类的全限定名，使用点（.）分隔。
+     * @param kind  类文件的类型，例如SOURCE或CLASS。
+     * @param bytes 类文件的字节码。
+     */
+    public JavaMemClass(String name, Kind kind, byte[] bytes) {
+        this(name, kind);
+        this.buffer = ByteBuffer.wrap(bytes).position(bytes.length);
+    }
+
+    /**
+     * 获取类文件的字节码，复制到新的字节数组中。
      *
      * @return 类文件的字节码数组。
+     * @throws IllegalStateException 如果字节码已经释放
      */
     public byte[] getBytes() {
-        return classByteArrayOutputStream.toByteArray();
+        ByteBuffer view = getBuffer();
+        byte[] bytes = new byte[view.remaining()];
+        view.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * 获取类文件的字节码，不复制数据，可以直接传给defineClass。返回的缓冲区在{@link #release()}之后不能再使用。
+     *
+     * @return 从0到字节码长度的缓冲区，直接内存为只读
+     * @throws IllegalStateException 如果字节码已经释放
+     */
+    public synchronized ByteBuffer getBuffer() {
+        if (buffer == null) throw new IllegalStateException("字节码已释放: " + className);
+        // 堆内存不设为只读，defineClass可以直接使用其中的数组
+        ByteBuffer view = buffer.isDirect() ? buffer.asReadOnlyBuffer() : buffer.duplicate();
+        return view.flip();
     }
 
     /**
-     * 打开一个输出流，用于写入类文件的内容。
+     * 获取类文件的字节码长度。
      *
-     * @return 一个ByteArrayOutputStream，用于写入类文件的字节码。
+     * @return 字节数，释放后为0
+     */
+    public synchronized int getSize() {
+        return buffer == null ? 0 : buffer.position();
+    }
+
+    /**
+     * 释放字节码，直接内存归还到{@link BytecodeBufferPool}，重复调用时忽略。
+     */
+    public synchronized void release() {
+        if (buffer == null) return;
+        BytecodeBufferPool.getInstance().release(buffer);
+        buffer = null;
+    }
+
+    /**
+     * 打开一个输出流，用于写入类文件的内容，写入直接内存，空间不足时借出更大的缓冲区。
+     *
+     * @return 一个OutputStream，用于写入类文件的字节码。
      */
     @Override
-    public OutputStream openOutputStream() {
-        return classByteArrayOutputStream;
+    public synchronized OutputStream openOutputStream() {
+        release();
+        buffer = BytecodeBufferPool.getInstance().acquire(INITIAL_CAPACITY);
+        return new OutputStream() {
+            @Override
+            public void write(int b) {
+                ensureCapacity(1).put((byte) b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                ensureCapacity(len).put(b, off, len);
+            }
+        };
+    }
+
+    private synchronized ByteBuffer ensureCapacity(int length) {
+        if (buffer == null) throw new IllegalStateException("字节码已释放: " + className);
+        if (buffer.remaining() >= length) return buffer;
+        ByteBuffer larger = BytecodeBufferPool.getInstance().acquire(Math.max(buffer.capacity() * 2, buffer.position() + length));
+        larger.put(buffer.flip());
+        BytecodeBufferPool.getInstance().release(buffer);
+        buffer = larger;
+        return buffer;
     }
-}
 
+    /**
+     * 打开一个输入流，用于读取类文件的内容，例如作为其他源代码编译时的依赖。
+     *
+     * @return 一个ByteArrayInputStream，用于读取类文件的字节码。
+     */
+    @Override
+    public InputStream openInputStream() {
+        return new ByteArrayInputStream(getBytes());
+    }
+}
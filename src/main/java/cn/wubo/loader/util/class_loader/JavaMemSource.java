@@ -1,5 +1,7 @@
 package cn.wubo.loader.util.class_loader;
 
+import lombok.Getter;
+
 import javax.tools.SimpleJavaFileObject;
 import java.net.URI;
 
@@ -14,6 +16,12 @@ public class JavaMemSource extends SimpleJavaFileObject{
 	 */
 	private String javaSourceCode;
 
+	/**
+	 * Java源文件的全限定名。
+	 */
+	@Getter
+	private String fullClassName;
+
 	/**
 	 * 构造函数初始化JavaMemSource对象。
 	 *
@@ -23,6 +31,7 @@ public class JavaMemSource extends SimpleJavaFileObject{
 	public JavaMemSource(String name, String javaSourceCode) {
 		super(URI.create("string:///" + name.replace('.', '/')+ Kind.SOURCE.extension), Kind.SOURCE);
 		this.javaSourceCode = javaSourceCode;
+		this.fullClassName = name;
 	}
 
 	/**
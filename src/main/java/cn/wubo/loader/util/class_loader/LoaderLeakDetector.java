@@ -0,0 +1,254 @@
+package cn.wubo.loader.util.class_loader;
+
+import cn.wubo.loader.util.SpringContextUtils;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.handler.AbstractHandlerMethodMapping;
+
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 类加载器泄漏检测，通过弱引用跟踪每一代动态类加载器。
+ * 已退役但仍未被回收的类加载器可能发生了泄漏，检测时查找仍在引用它的对象。
+ */
+@Slf4j
+public class LoaderLeakDetector {
+
+    /**
+     * 单例模式，获取类加载器泄漏检测的实例。
+     */
+    @Getter
+    private static final LoaderLeakDetector instance = new LoaderLeakDetector();
+
+    /**
+     * 跟踪中的类加载器，键为代数
+     */
+    private final Map<Long, Tracked> trackedMap = new ConcurrentHashMap<>();
+
+    private final ReferenceQueue<DynamicClassLoader> queue = new ReferenceQueue<>();
+
+    /**
+     * 已经被垃圾回收的类加载器数量
+     */
+    private final LongAdder collectedCount = new LongAdder();
+
+    private LoaderLeakDetector() {
+    }
+
+    /**
+     * 开始跟踪类加载器，由DynamicClassLoader的构造函数调用。
+     *
+     * @param classLoader 动态类加载器
+     */
+    void track(DynamicClassLoader classLoader) {
+        expunge();
+        trackedMap.put(classLoader.getGeneration(), new Tracked(classLoader, queue));
+    }
+
+    /**
+     * 将类加载器标记为已退役，之后它应当不再被引用并被垃圾回收。
+     *
+     * @param classLoader 动态类加载器
+     */
+    public void retire(DynamicClassLoader classLoader) {
+        Tracked tracked = trackedMap.get(classLoader.getGeneration());
+        if (tracked != null && tracked.retiredAt == 0) tracked.retiredAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 获取所有仍未被回收的动态类加载器的状态，按代数排序。
+     *
+     * @return 每一代的状态
+     */
+    public List<Generation> report() {
+        expunge();
+        DynamicClassLoader current = DynamicClassLoader.getInstance();
+        Map<ClassLoader, Tracked> aliveMap = new IdentityHashMap<>();
+        Map<ClassLoader, List<String>> pinMap = new IdentityHashMap<>();
+        trackedMap.values().forEach(tracked -> {
+            DynamicClassLoader classLoader = tracked.get();
+            if (classLoader != null) {
+                aliveMap.put(classLoader, tracked);
+                pinMap.put(classLoader, new ArrayList<>());
+            }
+        });
+        findPins(pinMap);
+        long now = System.currentTimeMillis();
+        List<Generation> generations = new ArrayList<>();
+        aliveMap.forEach((classLoader, tracked) -> {
+            DynamicClassLoader dynamicClassLoader = (DynamicClassLoader) classLoader;
+            generations.add(new Generation(tracked.generation, dynamicClassLoader == current, tracked.retiredAt == 0 ? -1 : now - tracked.retiredAt,
+                    dynamicClassLoader.getClassCount(), dynamicClassLoader.getJarClassCount(), dynamicClassLoader.getBytecodeSize(), pinMap.get(classLoader)));
+        });
+        generations.sort(Comparator.comparingLong(Generation::getGeneration));
+        return generations;
+    }
+
+    /**
+     * 获取退役时间超过指定时长仍未被回收的类加载器，结果只在垃圾回收之后才有意义。
+     *
+     * @param retiredMillis 退役时长，单位毫秒
+     * @return 可能泄漏的类加载器的状态
+     */
+    public List<Generation> suspects(long retiredMillis) {
+        return report().stream().filter(generation -> generation.getRetiredMillis() >= retiredMillis).toList();
+    }
+
+    /**
+     * 输出可能泄漏的类加载器以及引用它们的对象。
+     *
+     * @param retiredMillis 退役时长，单位毫秒
+     */
+    public void logSuspects(long retiredMillis) {
+        suspects(retiredMillis).forEach(generation -> log.warn("[泄漏检测]第{}代动态类加载器退役{}ms后仍未回收，类{}个，jar中的类{}个，字节码{}字节，引用: {}",
+                generation.getGeneration(), generation.getRetiredMillis(), generation.getClassCount(), generation.getJarClassCount(),
+                generation.getBytecodeSize(), generation.getPins()));
+    }
+
+    /**
+     * 获取已经被垃圾回收的动态类加载器数量。
+     *
+     * @return 数量
+     */
+    public long getCollectedCount() {
+        expunge();
+        return collectedCount.sum();
+    }
+
+    /**
+     * 获取JVM元空间的已用大小。
+     *
+     * @return 字节数，JVM不提供元空间内存池时返回-1
+     */
+    public static long getMetaspaceUsed() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if ("Metaspace".equals(pool.getName())) return pool.getUsage().getUsed();
+        }
+        return -1;
+    }
+
+    /**
+     * 获取JVM启动以来卸载的类数量。
+     *
+     * @return 类数量
+     */
+    public static long getUnloadedClassCount() {
+        ClassLoadingMXBean classLoadingMXBean = ManagementFactory.getClassLoadingMXBean();
+        return classLoadingMXBean.getUnloadedClassCount();
+    }
+
+    /**
+     * 查找引用各个类加载器中的类的对象，对象的类由子类加载器加载时同样记到祖先类加载器上。
+     */
+    private static void findPins(Map<ClassLoader, List<String>> pinMap) {
+        SpringContextUtils.getSingletons().forEach((beanName, bean) -> {
+            addPin(pinMap, bean.getClass().getClassLoader(), "bean:" + beanName);
+            if (bean instanceof AbstractHandlerMethodMapping<?> mapping) mapping.getHandlerMethods().forEach((info, handlerMethod) ->
+                    addPin(pinMap, handlerMethod.getBeanType().getClassLoader(), "mapping:" + info));
+        });
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            addPin(pinMap, thread.getContextClassLoader(), "thread:" + thread.getName());
+        }
+        for (ClassLoader classLoader : new ArrayList<>(pinMap.keySet())) {
+            addPin(pinMap, classLoader.getParent(), "loader:第" + ((DynamicClassLoader) classLoader).getGeneration() + "代");
+        }
+    }
+
+    private static void addPin(Map<ClassLoader, List<String>> pinMap, ClassLoader classLoader, String pin) {
+        for (ClassLoader current = classLoader; current != null; current = current.getParent()) {
+            List<String> pins = pinMap.get(current);
+            if (pins != null) pins.add(pin);
+        }
+    }
+
+    private void expunge() {
+        Reference<? extends DynamicClassLoader> reference;
+        while ((reference = queue.poll()) != null) {
+            Tracked tracked = (Tracked) reference;
+            trackedMap.remove(tracked.generation, tracked);
+            collectedCount.increment();
+        }
+    }
+
+    /**
+     * 跟踪中的类加载器的弱引用
+     */
+    private static class Tracked extends WeakReference<DynamicClassLoader> {
+
+        private final long generation;
+
+        /**
+         * 退役时间，未退役时为0
+         */
+        private volatile long retiredAt;
+
+        Tracked(DynamicClassLoader classLoader, ReferenceQueue<DynamicClassLoader> queue) {
+            super(classLoader, queue);
+            this.generation = classLoader.getGeneration();
+        }
+    }
+
+    /**
+     * 一代动态类加载器的状态
+     */
+    @Getter
+    public static class Generation {
+
+        /**
+         * 代数
+         */
+        private final long generation;
+
+        /**
+         * 是否为当前一代的全局动态类加载器
+         */
+        private final boolean current;
+
+        /**
+         * 退役的时长，单位毫秒，未退役时为-1
+         */
+        private final long retiredMillis;
+
+        /**
+         * 通过addClassMap定义的类数量
+         */
+        private final int classCount;
+
+        /**
+         * 从jar中加载的类数量
+         */
+        private final long jarClassCount;
+
+        /**
+         * 通过addClassMap定义的类的字节码总大小
+         */
+        private final long bytecodeSize;
+
+        /**
+         * 引用该类加载器中的类的对象，例如bean:名称、mapping:请求映射、thread:线程名、loader:子类加载器
+         */
+        private final List<String> pins;
+
+        public Generation(long generation, boolean current, long retiredMillis, int classCount, long jarClassCount, long bytecodeSize, List<String> pins) {
+            this.generation = generation;
+            this.current = current;
+            this.retiredMillis = retiredMillis;
+            this.classCount = classCount;
+            this.jarClassCount = jarClassCount;
+            this.bytecodeSize = bytecodeSize;
+            this.pins = pins;
+        }
+    }
+}
@@ -4,8 +4,14 @@ import javax.tools.FileObject;
 import javax.tools.ForwardingJavaFileManager;
 import javax.tools.JavaFileManager;
 import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * 在内存中管理编译后Java类的文件管理器。
@@ -20,6 +26,17 @@ public class MemFileManager extends ForwardingJavaFileManager<JavaFileManager> {
      */
     private Map<String, JavaMemClass> javaMemClassMap = new HashMap<>();
 
+    /**
+     * 编译时可以引用的、已经编译好的类，键为类名。
+     * 这些类不在类路径中，通过list方法提供给javac，使新的源代码可以引用之前动态编译的类而不需要重新编译它们。
+     */
+    private Map<String, JavaMemClass> dependencyMap = new HashMap<>();
+
+    /**
+     * 类路径索引，为null时类路径的列表请求转发给标准文件管理器
+     */
+    private ClassPathIndex classPathIndex;
+
     /**
      * 构造函数，初始化MemFileManager。
      *
@@ -27,6 +44,30 @@ public class MemFileManager extends ForwardingJavaFileManager<JavaFileManager> {
      */
     protected MemFileManager(JavaFileManager fileManager) {
         super(fileManager);
+        this.classPathIndex = ClassPathIndex.getInstance();
+    }
+
+    /**
+     * 构造函数，初始化MemFileManager，并提供编译时可以引用的已编译类。
+     *
+     * @param fileManager  基础文件管理器，通常是一个与文件系统交互的文件管理器。
+     * @param dependencies 已编译类的类名与字节码的映射
+     */
+    protected MemFileManager(JavaFileManager fileManager, Map<String, byte[]> dependencies) {
+        this(fileManager, dependencies, null);
+    }
+
+    /**
+     * 构造函数，初始化MemFileManager。编译选项中指定了类路径时不使用类路径索引，由标准文件管理器按指定的类路径查找。
+     *
+     * @param fileManager  基础文件管理器，通常是一个与文件系统交互的文件管理器。
+     * @param dependencies 已编译类的类名与字节码的映射
+     * @param options      编译选项，可以为null
+     */
+    protected MemFileManager(JavaFileManager fileManager, Map<String, byte[]> dependencies, Iterable<String> options) {
+        super(fileManager);
+        this.classPathIndex = hasClassPath(options) ? null : ClassPathIndex.getInstance();
+        dependencies.forEach((name, bytes) -> dependencyMap.put(name, new JavaMemClass(name, JavaFileObject.Kind.CLASS, bytes)));
     }
 
     /**
@@ -43,10 +84,70 @@ public class MemFileManager extends ForwardingJavaFileManager<JavaFileManager> {
     @Override
     public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
         JavaMemClass javaMemClass = new JavaMemClass(className, kind);
+        if (sibling instanceof JavaMemSource javaMemSource) javaMemClass.setSourceClassName(javaMemSource.getFullClassName());
         javaMemClassMap.put(className, javaMemClass);
         return javaMemClass;
     }
 
+    /**
+     * 重写list方法，类路径中的类直接从{@link ClassPathIndex}中返回，不再由标准文件管理器遍历类路径。
+     * 其他位置（例如JDK平台类）以及类以外的文件类型仍然转发给标准文件管理器。
+     *
+     * @param location    位置标识
+     * @param packageName 包名
+     * @param kinds       文件类型
+     * @param recurse     是否包含子包
+     * @return 文件对象列表
+     * @throws IOException 读取文件时发生的异常
+     */
+    @Override
+    public Iterable<JavaFileObject> list(Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse) throws IOException {
+        if (location != StandardLocation.CLASS_PATH || !kinds.contains(JavaFileObject.Kind.CLASS)) {
+            return super.list(location, packageName, kinds, recurse);
+        }
+        List<JavaFileObject> result = new ArrayList<>();
+        if (classPathIndex == null) {
+            super.list(location, packageName, kinds, recurse).forEach(result::add);
+        } else {
+            result.addAll(classPathIndex.list(packageName, recurse));
+            Set<JavaFileObject.Kind> otherKinds = EnumSet.copyOf(kinds);
+            otherKinds.remove(JavaFileObject.Kind.CLASS);
+            if (!otherKinds.isEmpty()) super.list(location, packageName, otherKinds, recurse).forEach(result::add);
+        }
+        // 追加已经编译好的依赖类
+        if (!dependencyMap.isEmpty()) {
+            String prefix = packageName.isEmpty() ? "" : packageName + ".";
+            dependencyMap.forEach((name, javaMemClass) -> {
+                int index = name.lastIndexOf('.');
+                String classPackageName = index < 0 ? "" : name.substring(0, index);
+                if (classPackageName.equals(packageName) || (recurse && classPackageName.startsWith(prefix))) result.add(javaMemClass);
+            });
+        }
+        return result;
+    }
+
+    private static boolean hasClassPath(Iterable<String> options) {
+        if (options == null) return false;
+        for (String option : options) {
+            if (option.equals("-classpath") || option.equals("-cp") || option.equals("--class-path") || option.startsWith("--class-path=")) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 重写inferBinaryName方法，索引中的类文件和已编译的依赖类直接返回其二进制名称。
+     *
+     * @param location 位置标识
+     * @param file     文件对象
+     * @return 类的二进制名称
+     */
+    @Override
+    public String inferBinaryName(Location location, JavaFileObject file) {
+        if (file instanceof ClassPathIndex.IndexedClass indexedClass) return indexedClass.getBinaryName();
+        if (file instanceof JavaMemClass javaMemClass && dependencyMap.get(javaMemClass.getClassName()) == file) return javaMemClass.getClassName();
+        return super.inferBinaryName(location, file);
+    }
+
     /**
      * 提供对javaMemClassMap的访问，允许外部获取和检查编译后的类。
      *
@@ -0,0 +1,202 @@
+package cn.wubo.loader.util.class_loader;
+
+import cn.wubo.loader.util.exception.LoaderRuntimeException;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 并行编译器，将互不引用的源代码分成多组，在有界的线程池中同时编译。
+ * 所有批次编译成功后，编译结果一次性加载到动态类加载器中。
+ */
+@Slf4j
+public class ParallelCompiler implements AutoCloseable {
+
+    /**
+     * 单例模式，获取并行度为CPU核数的并行编译器。
+     */
+    @Getter
+    private static final ParallelCompiler instance = new ParallelCompiler(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * 匹配Java标识符
+     */
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*");
+
+    /**
+     * 并行度
+     */
+    @Getter
+    private final int parallelism;
+
+    /**
+     * 编译使用的线程池
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * 构造函数，初始化并行编译器。
+     *
+     * @param parallelism 并行度，即同时执行的编译任务数量上限
+     */
+    public ParallelCompiler(int parallelism) {
+        if (parallelism <= 0) throw new IllegalArgumentException("parallelism must be positive");
+        this.parallelism = parallelism;
+        this.pool = new ForkJoinPool(parallelism, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("loader-compiler-" + thread.getPoolIndex());
+            // 使编译线程可以加载应用中的类，例如lombok注解处理器
+            thread.setContextClassLoader(ParallelCompiler.class.getClassLoader());
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * 并行编译源代码，并将编译结果加载到动态类加载器中。
+     *
+     * @param sources 完全限定类名与Java源代码的映射
+     * @return 编译结果，包括编译后的类和各阶段耗时
+     */
+    public Result compiler(Map<String, String> sources) {
+        Result result = new Result();
+
+        long start = System.nanoTime();
+        List<Map<String, String>> batches = partition(sources);
+        result.stageNanos.put("partition", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        List<CompletableFuture<Map<String, JavaMemClass>>> futures = new ArrayList<>(batches.size());
+        for (int i = 0; i < batches.size(); i++) {
+            Map<String, String> batch = batches.get(i);
+            String stage = "compile-" + i;
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                long batchStart = System.nanoTime();
+                Map<String, JavaMemClass> javaMemClassMap = JavaBuilder.builder().compiler(batch).getJavaMemClassMap();
+                synchronized (result.stageNanos) {
+                    result.stageNanos.put(stage, System.nanoTime() - batchStart);
+                }
+                return javaMemClassMap;
+            }, pool));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            // allOf在所有批次结束后才完成，编译成功的批次不会再被加载，归还它们的直接内存
+            for (CompletableFuture<Map<String, JavaMemClass>> future : futures) {
+                if (!future.isCompletedExceptionally()) future.join().values().forEach(JavaMemClass::release);
+            }
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            if (cause instanceof LoaderRuntimeException loaderRuntimeException) throw loaderRuntimeException;
+            throw new LoaderRuntimeException(cause.getMessage(), cause);
+        }
+        futures.forEach(future -> result.javaMemClassMap.putAll(future.join()));
+        result.stageNanos.put("compile", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        DynamicClassLoader.getInstance().addJavaMemClassMap(result.javaMemClassMap, false);
+        result.stageNanos.put("define", System.nanoTime() - start);
+
+        log.debug("[并行编译]源代码{}个，分为{}批，各阶段耗时(ns): {}", sources.size(), batches.size(), result.stageNanos);
+        return result;
+    }
+
+    /**
+     * 将源代码分组。先根据源代码之间的引用关系合并出互不相关的组，再将这些组均衡地分配到不超过并行度的批次中。
+     *
+     * @param sources 完全限定类名与Java源代码的映射
+     * @return 批次列表，每个批次作为一个编译任务
+     */
+    List<Map<String, String>> partition(Map<String, String> sources) {
+        List<String> units = new ArrayList<>(sources.keySet());
+        Map<String, Integer> simpleNameMap = new HashMap<>();
+        int[] parent = new int[units.size()];
+        for (int i = 0; i < units.size(); i++) {
+            parent[i] = i;
+            String unit = units.get(i);
+            String simpleName = unit.substring(unit.lastIndexOf('.') + 1);
+            Integer existing = simpleNameMap.putIfAbsent(simpleName, i);
+            // 简单类名相同的源代码无法区分引用关系，保守地放在同一组
+            if (existing != null) union(parent, existing, i);
+        }
+        for (int i = 0; i < units.size(); i++) {
+            Matcher matcher = IDENTIFIER.matcher(sources.get(units.get(i)));
+            while (matcher.find()) {
+                Integer referenced = simpleNameMap.get(matcher.group());
+                if (referenced != null && referenced != i) union(parent, i, referenced);
+            }
+        }
+
+        Map<Integer, Map<String, String>> groups = new LinkedHashMap<>();
+        Map<Integer, Long> groupSizes = new HashMap<>();
+        for (int i = 0; i < units.size(); i++) {
+            int root = find(parent, i);
+            String unit = units.get(i);
+            groups.computeIfAbsent(root, key -> new LinkedHashMap<>()).put(unit, sources.get(unit));
+            groupSizes.merge(root, (long) sources.get(unit).length(), Long::sum);
+        }
+
+        // 按源代码大小从大到小，依次放入当前最小的批次
+        int batchCount = Math.min(parallelism, groups.size());
+        List<Map<String, String>> batches = new ArrayList<>(batchCount);
+        long[] batchSizes = new long[batchCount];
+        for (int i = 0; i < batchCount; i++) batches.add(new LinkedHashMap<>());
+        groups.keySet().stream().sorted(Comparator.comparing(groupSizes::get).reversed()).forEach(root -> {
+            int smallest = 0;
+            for (int i = 1; i < batchCount; i++) {
+                if (batchSizes[i] < batchSizes[smallest]) smallest = i;
+            }
+            batches.get(smallest).putAll(groups.get(root));
+            batchSizes[smallest] += groupSizes.get(root);
+        });
+        return batches;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        parent[find(parent, a)] = find(parent, b);
+    }
+
+    /**
+     * 关闭编译线程池。
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * 并行编译的结果
+     */
+    @Getter
+    public static class Result {
+
+        /**
+         * 编译后的类的映射，字节码由动态类加载器持有，类定义后释放
+         */
+        private final Map<String, JavaMemClass> javaMemClassMap = new LinkedHashMap<>();
+
+        /**
+         * 各阶段耗时，单位纳秒。partition为分组，compile为全部批次的编译，compile-N为第N个批次的编译，define为加载到类加载器
+         */
+        private final Map<String, Long> stageNanos = new LinkedHashMap<>();
+    }
+}
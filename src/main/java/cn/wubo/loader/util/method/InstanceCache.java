@@ -0,0 +1,125 @@
+package cn.wubo.loader.util.method;
+
+import cn.wubo.loader.util.class_loader.DynamicClassLoader;
+import lombok.Getter;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 目标类实例的缓存，按类保存实例提供者，实例策略按完全限定类名配置。
+ * 动态类加载器被清理时丢弃所有提供者及其中的实例。
+ */
+public class InstanceCache {
+
+    private static volatile ProviderCache cache = new ProviderCache();
+
+    /**
+     * 按完全限定类名配置的实例策略
+     */
+    private static final Map<String, InstanceStrategy> strategyMap = new ConcurrentHashMap<>();
+
+    /**
+     * 未单独配置的类使用的实例策略，默认每次调用创建新的实例
+     */
+    @Getter
+    private static volatile InstanceStrategy defaultStrategy = InstanceStrategy.PROTOTYPE;
+
+    /**
+     * 对象池策略时每个类的空闲实例数量上限
+     */
+    @Getter
+    private static volatile int poolSize = Runtime.getRuntime().availableProcessors() * 2;
+
+    static {
+        DynamicClassLoader.addClearListener(InstanceCache::clear);
+    }
+
+    private InstanceCache() {
+    }
+
+    /**
+     * 获取类的实例提供者。
+     *
+     * @param clazz 目标类
+     * @return 实例提供者
+     */
+    public static InstanceProvider getProvider(Class<?> clazz) {
+        return cache.get(clazz);
+    }
+
+    /**
+     * 设置未单独配置的类使用的实例策略。
+     *
+     * @param strategy 实例策略
+     */
+    public static void setDefaultStrategy(InstanceStrategy strategy) {
+        defaultStrategy = strategy;
+        clear();
+    }
+
+    /**
+     * 设置类的实例策略。
+     *
+     * @param fullClassName 完全限定类名
+     * @param strategy      实例策略，为null时恢复为默认策略
+     */
+    public static void setStrategy(String fullClassName, InstanceStrategy strategy) {
+        if (strategy == null) strategyMap.remove(fullClassName);
+        else strategyMap.put(fullClassName, strategy);
+        clear();
+    }
+
+    /**
+     * 设置对象池策略时每个类的空闲实例数量上限。
+     *
+     * @param size 空闲实例数量上限
+     */
+    public static void setPoolSize(int size) {
+        if (size <= 0) throw new IllegalArgumentException("poolSize must be positive");
+        poolSize = size;
+        clear();
+    }
+
+    /**
+     * 丢弃所有缓存的实例。
+     */
+    public static void clear() {
+        ProviderCache previous = cache;
+        cache = new ProviderCache();
+        previous.clear();
+    }
+
+    /**
+     * 按类保存的实例提供者，同时记录需要在清理时丢弃实例的提供者
+     */
+    private static class ProviderCache extends ClassValue<InstanceProvider> {
+
+        /**
+         * 线程本地策略的提供者，只持有弱引用，不阻止未被清理的类被卸载
+         */
+        private final Queue<WeakReference<InstanceProvider>> threadLocalProviders = new ConcurrentLinkedQueue<>();
+
+        @Override
+        protected InstanceProvider computeValue(Class<?> type) {
+            InstanceStrategy strategy = strategyMap.getOrDefault(type.getName(), defaultStrategy);
+            InstanceProvider provider = InstanceProvider.of(type, strategy, poolSize);
+            if (strategy == InstanceStrategy.THREAD_LOCAL) {
+                threadLocalProviders.removeIf(reference -> reference.get() == null);
+                threadLocalProviders.add(new WeakReference<>(provider));
+            }
+            return provider;
+        }
+
+        private void clear() {
+            threadLocalProviders.forEach(reference -> {
+                InstanceProvider provider = reference.get();
+                if (provider != null) provider.clear();
+            });
+            threadLocalProviders.clear();
+        }
+    }
+}
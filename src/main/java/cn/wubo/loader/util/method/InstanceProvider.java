@@ -0,0 +1,182 @@
+package cn.wubo.loader.util.method;
+
+import cn.wubo.loader.util.exception.LoaderRuntimeException;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 目标类实例的提供者，每个类按照实例策略创建一个提供者。
+ * 调用方法前通过acquire获取实例，调用结束后通过release归还。
+ */
+public abstract class InstanceProvider {
+
+    private final Constructor<?> constructor;
+
+    protected InstanceProvider(Class<?> clazz) {
+        try {
+            this.constructor = clazz.getConstructor();
+        } catch (NoSuchMethodException e) {
+            throw new LoaderRuntimeException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 根据实例策略创建提供者。
+     *
+     * @param clazz    目标类
+     * @param strategy 实例策略
+     * @param poolSize 对象池策略时池中空闲实例数量上限
+     * @return 实例提供者
+     */
+    public static InstanceProvider of(Class<?> clazz, InstanceStrategy strategy, int poolSize) {
+        return switch (strategy) {
+            case PROTOTYPE -> new PrototypeProvider(clazz);
+            case SINGLETON -> new SingletonProvider(clazz);
+            case THREAD_LOCAL -> new ThreadLocalProvider(clazz);
+            case POOL -> new PoolProvider(clazz, poolSize);
+        };
+    }
+
+    /**
+     * 获取实例。
+     *
+     * @return 目标类的实例
+     */
+    public abstract Object acquire();
+
+    /**
+     * 归还实例。
+     *
+     * @param instance 通过acquire获取的实例
+     */
+    public void release(Object instance) {
+    }
+
+    /**
+     * 丢弃提供者持有的实例，提供者被替换时由InstanceCache调用，之后获取的实例不再缓存。
+     */
+    public void clear() {
+    }
+
+    /**
+     * 通过无参构造函数创建实例。
+     *
+     * @return 新的实例
+     */
+    protected Object newInstance() {
+        try {
+            return constructor.newInstance();
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new LoaderRuntimeException(e.getMessage(), e);
+        }
+    }
+
+    private static class PrototypeProvider extends InstanceProvider {
+
+        PrototypeProvider(Class<?> clazz) {
+            super(clazz);
+        }
+
+        @Override
+        public Object acquire() {
+            return newInstance();
+        }
+    }
+
+    private static class SingletonProvider extends InstanceProvider {
+
+        private volatile Object instance;
+
+        SingletonProvider(Class<?> clazz) {
+            super(clazz);
+        }
+
+        @Override
+        public Object acquire() {
+            Object current = instance;
+            if (current != null) return current;
+            synchronized (this) {
+                if (instance == null) instance = newInstance();
+                return instance;
+            }
+        }
+    }
+
+    /**
+     * 线程池中的线程长期存活，线程本地变量中的实例会一直引用旧类及其类加载器，
+     * 因此记录每个线程的实例，清理时统一丢弃，线程中只剩下不引用旧类的空容器。
+     */
+    private static class ThreadLocalProvider extends InstanceProvider {
+
+        private final ThreadLocal<Holder> threadLocal = new ThreadLocal<>();
+
+        /**
+         * 所有线程的实例容器
+         */
+        private final Set<Holder> holders = ConcurrentHashMap.newKeySet();
+
+        private volatile boolean cleared;
+
+        ThreadLocalProvider(Class<?> clazz) {
+            super(clazz);
+        }
+
+        @Override
+        public Object acquire() {
+            if (cleared) return newInstance();
+            Holder holder = threadLocal.get();
+            if (holder == null) {
+                holder = new Holder();
+                threadLocal.set(holder);
+                holders.add(holder);
+            }
+            Object instance = holder.instance;
+            if (instance == null) {
+                instance = newInstance();
+                holder.instance = instance;
+                // 与clear同时执行时不保留实例
+                if (cleared) holder.instance = null;
+            }
+            return instance;
+        }
+
+        @Override
+        public void clear() {
+            cleared = true;
+            holders.forEach(holder -> holder.instance = null);
+            holders.clear();
+        }
+
+        private static class Holder {
+
+            private volatile Object instance;
+        }
+    }
+
+    private static class PoolProvider extends InstanceProvider {
+
+        private final BlockingQueue<Object> idleQueue;
+
+        PoolProvider(Class<?> clazz, int poolSize) {
+            super(clazz);
+            this.idleQueue = new ArrayBlockingQueue<>(poolSize);
+        }
+
+        @Override
+        public Object acquire() {
+            Object instance = idleQueue.poll();
+            return instance != null ? instance : newInstance();
+        }
+
+        @Override
+        public void release(Object instance) {
+            // 池已满时丢弃实例
+            idleQueue.offer(instance);
+        }
+    }
+}
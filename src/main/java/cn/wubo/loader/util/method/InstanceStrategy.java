@@ -0,0 +1,27 @@
+package cn.wubo.loader.util.method;
+
+/**
+ * 执行类中的方法时获取目标类实例的策略
+ */
+public enum InstanceStrategy {
+
+    /**
+     * 每次调用创建新的实例，与之前的行为相同
+     */
+    PROTOTYPE,
+
+    /**
+     * 每个类缓存一个实例，所有线程共享，适合无状态的类
+     */
+    SINGLETON,
+
+    /**
+     * 每个线程缓存一个实例，适合有状态但不需要跨调用保留状态的类
+     */
+    THREAD_LOCAL,
+
+    /**
+     * 从有界对象池中借出实例，调用结束后归还，池中没有空闲实例时创建新的实例
+     */
+    POOL
+}
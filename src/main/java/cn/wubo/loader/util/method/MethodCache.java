@@ -0,0 +1,148 @@
+package cn.wubo.loader.util.method;
+
+import cn.wubo.loader.util.class_loader.DynamicClassLoader;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 方法解析缓存，按类、方法名和参数类型缓存查找到的方法及其调用器。
+ * 缓存挂在类上（ClassValue），动态类加载器被清理时整体丢弃。
+ */
+public class MethodCache {
+
+    private static volatile ClassValue<Map<Object, MethodInvoker>> cache = newCache();
+
+    static {
+        DynamicClassLoader.addClearListener(MethodCache::clear);
+    }
+
+    private MethodCache() {
+    }
+
+    /**
+     * 获取类中声明的方法，与Class.getDeclaredMethod相同，返回的方法已设置为可访问。
+     *
+     * @param clazz          目标类
+     * @param methodName     方法名
+     * @param parameterTypes 参数类型
+     * @return 方法
+     * @throws NoSuchMethodException 如果方法不存在
+     */
+    public static Method getDeclaredMethod(Class<?> clazz, String methodName, Class<?>... parameterTypes) throws NoSuchMethodException {
+        return get(clazz, methodName, parameterTypes, false).getMethod();
+    }
+
+    /**
+     * 获取类中声明的方法的调用器。
+     *
+     * @param clazz          目标类
+     * @param methodName     方法名
+     * @param parameterTypes 参数类型
+     * @return 方法调用器
+     * @throws NoSuchMethodException 如果方法不存在
+     */
+    public static MethodInvoker getDeclaredInvoker(Class<?> clazz, String methodName, Class<?>... parameterTypes) throws NoSuchMethodException {
+        return get(clazz, methodName, parameterTypes, false);
+    }
+
+    /**
+     * 获取类中的公共方法，包括继承的方法，与Class.getMethod相同，返回的方法已设置为可访问。
+     *
+     * @param clazz          目标类
+     * @param methodName     方法名
+     * @param parameterTypes 参数类型
+     * @return 方法
+     * @throws NoSuchMethodException 如果方法不存在
+     */
+    public static Method getMethod(Class<?> clazz, String methodName, Class<?>... parameterTypes) throws NoSuchMethodException {
+        return get(clazz, methodName, parameterTypes, true).getMethod();
+    }
+
+    /**
+     * 获取类中的公共方法的调用器，包括继承的方法。
+     *
+     * @param clazz          目标类
+     * @param methodName     方法名
+     * @param parameterTypes 参数类型
+     * @return 方法调用器
+     * @throws NoSuchMethodException 如果方法不存在
+     */
+    public static MethodInvoker getInvoker(Class<?> clazz, String methodName, Class<?>... parameterTypes) throws NoSuchMethodException {
+        return get(clazz, methodName, parameterTypes, true);
+    }
+
+    /**
+     * 获取已经查找到的方法的调用器，例如代理拦截时传入的方法。
+     *
+     * @param method 方法
+     * @return 方法调用器
+     */
+    public static MethodInvoker getInvoker(Method method) {
+        return cache.get(method.getDeclaringClass()).computeIfAbsent(method, key -> MethodInvoker.of(method));
+    }
+
+    /**
+     * 丢弃所有缓存的方法。
+     */
+    public static void clear() {
+        cache = newCache();
+    }
+
+    private static MethodInvoker get(Class<?> clazz, String methodName, Class<?>[] parameterTypes, boolean publicOnly) throws NoSuchMethodException {
+        Map<Object, MethodInvoker> invokerMap = cache.get(clazz);
+        MethodKey key = new MethodKey(methodName, parameterTypes, publicOnly);
+        MethodInvoker invoker = invokerMap.get(key);
+        if (invoker != null) return invoker;
+        Method method = publicOnly ? clazz.getMethod(methodName, parameterTypes) : clazz.getDeclaredMethod(methodName, parameterTypes);
+        method.setAccessible(true);
+        invoker = MethodInvoker.of(method);
+        MethodInvoker existing = invokerMap.putIfAbsent(key, invoker);
+        return existing == null ? invoker : existing;
+    }
+
+    private static ClassValue<Map<Object, MethodInvoker>> newCache() {
+        return new ClassValue<>() {
+            @Override
+            protected Map<Object, MethodInvoker> computeValue(Class<?> type) {
+                return new ConcurrentHashMap<>();
+            }
+        };
+    }
+
+    /**
+     * 方法缓存的键
+     */
+    static final class MethodKey {
+
+        private final String methodName;
+
+        private final Class<?>[] parameterTypes;
+
+        private final boolean publicOnly;
+
+        private final int hash;
+
+        MethodKey(String methodName, Class<?>[] parameterTypes, boolean publicOnly) {
+            this.methodName = methodName;
+            // 复制参数类型，调用方之后修改数组不会影响缓存中的键
+            this.parameterTypes = parameterTypes.clone();
+            this.publicOnly = publicOnly;
+            this.hash = (methodName.hashCode() * 31 + Arrays.hashCode(parameterTypes)) * 31 + Boolean.hashCode(publicOnly);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof MethodKey other)) return false;
+            return publicOnly == other.publicOnly && methodName.equals(other.methodName) && Arrays.equals(parameterTypes, other.parameterTypes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
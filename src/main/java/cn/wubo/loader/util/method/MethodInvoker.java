@@ -0,0 +1,127 @@
+package cn.wubo.loader.util.method;
+
+import cn.wubo.loader.util.exception.LoaderRuntimeException;
+import lombok.Getter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * 方法调用器，将反射得到的方法转换为MethodHandle后调用，避免Method.invoke的访问检查和参数校验开销。
+ */
+public final class MethodInvoker {
+
+    private static final MethodType GENERIC_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+    /**
+     * 目标方法
+     */
+    @Getter
+    private final Method method;
+
+    /**
+     * 保持目标方法原始参数类型的MethodHandle，实例方法的第一个参数是目标对象，
+     * 例如String testMethod(String)的类型为(TestClass, String)String
+     */
+    @Getter
+    private final MethodHandle typedHandle;
+
+    /**
+     * 类型为(Object, Object[])Object的MethodHandle，静态方法忽略第一个参数
+     */
+    private final MethodHandle handle;
+
+    private MethodInvoker(Method method, MethodHandle typedHandle, MethodHandle handle) {
+        this.method = method;
+        this.typedHandle = typedHandle;
+        this.handle = handle;
+    }
+
+    /**
+     * 创建方法调用器。
+     *
+     * @param method 目标方法
+     * @return 方法调用器
+     */
+    public static MethodInvoker of(Method method) {
+        MethodHandle typedHandle = unreflect(method).asFixedArity();
+        MethodHandle handle = typedHandle;
+        if (Modifier.isStatic(method.getModifiers())) handle = MethodHandles.dropArguments(handle, 0, Object.class);
+        handle = handle.asSpreader(Object[].class, method.getParameterCount()).asType(GENERIC_TYPE);
+        return new MethodInvoker(method, typedHandle, handle);
+    }
+
+    /**
+     * 调用目标方法，与Method.invoke相同，目标方法抛出的异常包装为InvocationTargetException。
+     *
+     * @param target 目标对象，静态方法时忽略
+     * @param args   参数
+     * @return 返回值，返回值为void时返回null
+     * @throws IllegalArgumentException  如果目标对象或参数与目标方法不匹配
+     * @throws InvocationTargetException 如果目标方法抛出异常
+     */
+    public Object invoke(Object target, Object... args) throws InvocationTargetException {
+        try {
+            return handle.invokeExact(target, args);
+        } catch (ClassCastException | WrongMethodTypeException | NullPointerException | IllegalArgumentException e) {
+            // 转换目标对象和参数失败时目标方法没有执行，与Method.invoke相同抛出IllegalArgumentException
+            if (!accepts(target, args)) throw new IllegalArgumentException("参数与方法不匹配: " + method, e);
+            throw new InvocationTargetException(e);
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    /**
+     * 判断目标对象和参数能否传给目标方法，只在调用失败时用于区分异常的来源。
+     */
+    private boolean accepts(Object target, Object[] args) {
+        if (!Modifier.isStatic(method.getModifiers()) && !method.getDeclaringClass().isInstance(target)) return false;
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        if ((args == null ? 0 : args.length) != parameterTypes.length) return false;
+        for (int i = 0; i < parameterTypes.length; i++) {
+            Class<?> type = parameterTypes[i];
+            if (!type.isPrimitive()) {
+                if (args[i] != null && !type.isInstance(args[i])) return false;
+            } else if (args[i] == null || !widens(unwrap(args[i].getClass()), type)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Class<?> unwrap(Class<?> type) {
+        return MethodType.methodType(type).unwrap().returnType();
+    }
+
+    /**
+     * 基本类型的拓宽转换，与拆箱后的参数转换规则相同
+     */
+    private static boolean widens(Class<?> from, Class<?> to) {
+        if (from == to) return true;
+        if (from == byte.class) return to == short.class || to == int.class || to == long.class || to == float.class || to == double.class;
+        if (from == short.class || from == char.class) return to == int.class || to == long.class || to == float.class || to == double.class;
+        if (from == int.class) return to == long.class || to == float.class || to == double.class;
+        if (from == long.class) return to == float.class || to == double.class;
+        return from == float.class && to == double.class;
+    }
+
+    private static MethodHandle unreflect(Method method) {
+        try {
+            return MethodHandles.lookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            // 非公共方法或非公共类中的方法，先设置可访问性再转换
+            method.setAccessible(true);
+            try {
+                return MethodHandles.lookup().unreflect(method);
+            } catch (IllegalAccessException ex) {
+                throw new LoaderRuntimeException(ex.getMessage(), ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package cn.wubo.loader.util.method;
+
+import cn.wubo.loader.util.class_loader.DynamicClassLoader;
+import lombok.Getter;
+
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * 方法重载解析，根据实际参数选择要调用的方法，规则与Java编译器选择重载方法的规则相近。
+ * 解析结果按类、方法名和实际参数的类型缓存在分派表中。
+ */
+public class MethodResolver {
+
+    private static volatile ClassValue<Map<MethodCache.MethodKey, Dispatch>> cache = newCache();
+
+    /**
+     * 基本类型可以放宽到的其他基本类型
+     */
+    private static final Map<Class<?>, Set<Class<?>>> WIDENING = Map.of(
+            byte.class, Set.of(short.class, int.class, long.class, float.class, double.class),
+            short.class, Set.of(int.class, long.class, float.class, double.class),
+            char.class, Set.of(int.class, long.class, float.class, double.class),
+            int.class, Set.of(long.class, float.class, double.class),
+            long.class, Set.of(float.class, double.class),
+            float.class, Set.of(double.class));
+
+    static {
+        DynamicClassLoader.addClearListener(MethodResolver::clear);
+    }
+
+    private MethodResolver() {
+    }
+
+    /**
+     * 根据实际参数解析要调用的方法。
+     *
+     * @param clazz      目标类
+     * @param methodName 方法名
+     * @param publicOnly 为true时只查找公共方法（包括继承的方法），为false时查找类及其父类中声明的所有方法
+     * @param args       实际参数
+     * @return 分派结果
+     * @throws NoSuchMethodException 如果没有匹配的方法，或者匹配到多个同样具体的方法
+     */
+    public static Dispatch resolve(Class<?> clazz, String methodName, boolean publicOnly, Object... args) throws NoSuchMethodException {
+        Class<?>[] argumentTypes = new Class<?>[args.length];
+        for (int i = 0; i < args.length; i++) {
+            argumentTypes[i] = args[i] == null ? null : args[i].getClass();
+        }
+        Map<MethodCache.MethodKey, Dispatch> dispatchMap = cache.get(clazz);
+        MethodCache.MethodKey key = new MethodCache.MethodKey(methodName, argumentTypes, publicOnly);
+        Dispatch dispatch = dispatchMap.get(key);
+        if (dispatch != null) return dispatch;
+        dispatch = select(clazz, methodName, publicOnly, argumentTypes);
+        Dispatch existing = dispatchMap.putIfAbsent(key, dispatch);
+        return existing == null ? dispatch : existing;
+    }
+
+    /**
+     * 丢弃所有分派表。
+     */
+    public static void clear() {
+        cache = newCache();
+    }
+
+    private static Dispatch select(Class<?> clazz, String methodName, boolean publicOnly, Class<?>[] argumentTypes) throws NoSuchMethodException {
+        List<Method> candidates = candidates(clazz, methodName, publicOnly);
+        // 第一阶段不允许基本类型放宽，第二阶段允许基本类型放宽，第三阶段允许可变参数
+        for (int phase = 0; phase < 3; phase++) {
+            boolean widening = phase > 0;
+            boolean varargs = phase == 2;
+            List<Method> applicable = new ArrayList<>();
+            for (Method candidate : candidates) {
+                if (isApplicable(candidate, argumentTypes, widening, varargs)) applicable.add(candidate);
+            }
+            if (applicable.isEmpty()) continue;
+            Method method = mostSpecific(applicable, argumentTypes.length, varargs);
+            if (method == null)
+                throw new NoSuchMethodException("匹配到多个方法: " + describe(clazz, methodName, argumentTypes) + " " + applicable);
+            return new Dispatch(MethodCache.getInvoker(method), varargs ? method.getParameterCount() - 1 : -1);
+        }
+        throw new NoSuchMethodException(describe(clazz, methodName, argumentTypes));
+    }
+
+    /**
+     * 获取同名的候选方法，子类中重写的方法优先于父类中的方法。
+     */
+    private static List<Method> candidates(Class<?> clazz, String methodName, boolean publicOnly) {
+        Map<List<Class<?>>, Method> methodMap = new LinkedHashMap<>();
+        if (publicOnly) {
+            for (Method method : clazz.getMethods()) {
+                if (method.getName().equals(methodName) && !method.isBridge()) methodMap.putIfAbsent(Arrays.asList(method.getParameterTypes()), method);
+            }
+        } else {
+            for (Class<?> current = clazz; current != null; current = current.getSuperclass()) {
+                for (Method method : current.getDeclaredMethods()) {
+                    if (method.getName().equals(methodName) && !method.isBridge() && !method.isSynthetic())
+                        methodMap.putIfAbsent(Arrays.asList(method.getParameterTypes()), method);
+                }
+            }
+        }
+        return new ArrayList<>(methodMap.values());
+    }
+
+    private static boolean isApplicable(Method method, Class<?>[] argumentTypes, boolean widening, boolean varargs) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        if (!varargs) {
+            if (parameterTypes.length != argumentTypes.length) return false;
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if (!isConvertible(argumentTypes[i], parameterTypes[i], widening)) return false;
+            }
+            return true;
+        }
+        if (!method.isVarArgs() || argumentTypes.length < parameterTypes.length - 1) return false;
+        int fixed = parameterTypes.length - 1;
+        for (int i = 0; i < fixed; i++) {
+            if (!isConvertible(argumentTypes[i], parameterTypes[i], true)) return false;
+        }
+        Class<?> componentType = parameterTypes[fixed].getComponentType();
+        for (int i = fixed; i < argumentTypes.length; i++) {
+            if (!isConvertible(argumentTypes[i], componentType, true)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 判断实际参数类型能否转换为方法参数类型，null表示参数为null。
+     */
+    private static boolean isConvertible(Class<?> from, Class<?> to, boolean widening) {
+        if (from == null) return !to.isPrimitive();
+        if (!to.isPrimitive()) return to.isAssignableFrom(from);
+        Class<?> primitive = unwrap(from);
+        if (primitive == null) return false;
+        return primitive == to || widening && WIDENING.getOrDefault(primitive, Set.of()).contains(to);
+    }
+
+    /**
+     * 选择参数类型最具体的方法，没有唯一最具体的方法时返回null。
+     */
+    private static Method mostSpecific(List<Method> applicable, int argumentCount, boolean varargs) {
+        Method result = null;
+        for (Method method : applicable) {
+            boolean specific = true;
+            for (Method other : applicable) {
+                if (other != method && !isMoreSpecific(method, other, argumentCount, varargs)) {
+                    specific = false;
+                    break;
+                }
+            }
+            if (specific) {
+                if (result != null) return null;
+                result = method;
+            }
+        }
+        return result;
+    }
+
+    private static boolean isMoreSpecific(Method method, Method other, int argumentCount, boolean varargs) {
+        int count = varargs ? Math.max(argumentCount, Math.max(method.getParameterCount(), other.getParameterCount())) : argumentCount;
+        for (int i = 0; i < count; i++) {
+            if (!isMoreSpecific(parameterType(method, i, varargs), parameterType(other, i, varargs))) return false;
+        }
+        return true;
+    }
+
+    private static boolean isMoreSpecific(Class<?> type, Class<?> other) {
+        if (type == other) return true;
+        if (type.isPrimitive() && other.isPrimitive()) return WIDENING.getOrDefault(type, Set.of()).contains(other);
+        if (type.isPrimitive()) return other.isAssignableFrom(wrap(type));
+        if (other.isPrimitive()) return false;
+        return other.isAssignableFrom(type);
+    }
+
+    private static Class<?> parameterType(Method method, int index, boolean varargs) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        if (varargs && index >= parameterTypes.length - 1) return parameterTypes[parameterTypes.length - 1].getComponentType();
+        return parameterTypes[index];
+    }
+
+    private static Class<?> wrap(Class<?> type) {
+        return MethodType.methodType(type).wrap().returnType();
+    }
+
+    private static Class<?> unwrap(Class<?> type) {
+        Class<?> primitive = MethodType.methodType(type).unwrap().returnType();
+        return primitive.isPrimitive() && primitive != void.class ? primitive : null;
+    }
+
+    private static String describe(Class<?> clazz, String methodName, Class<?>[] argumentTypes) {
+        return clazz.getName() + "." + methodName + Arrays.stream(argumentTypes)
+                .map(type -> type == null ? "null" : type.getName())
+                .collect(Collectors.joining(", ", "(", ")"));
+    }
+
+    private static ClassValue<Map<MethodCache.MethodKey, Dispatch>> newCache() {
+        return new ClassValue<>() {
+            @Override
+            protected Map<MethodCache.MethodKey, Dispatch> computeValue(Class<?> type) {
+                return new ConcurrentHashMap<>();
+            }
+        };
+    }
+
+    /**
+     * 分派结果，包括选中方法的调用器，以及可变参数方法需要打包成数组的参数位置。
+     */
+    public static final class Dispatch {
+
+        /**
+         * 选中方法的调用器
+         */
+        @Getter
+        private final MethodInvoker invoker;
+
+        /**
+         * 可变参数的位置，不需要打包可变参数时为-1
+         */
+        private final int varargsIndex;
+
+        /**
+         * 可变参数数组的元素类型
+         */
+        private final Class<?> componentType;
+
+        private Dispatch(MethodInvoker invoker, int varargsIndex) {
+            this.invoker = invoker;
+            this.varargsIndex = varargsIndex;
+            this.componentType = varargsIndex < 0 ? null : invoker.getMethod().getParameterTypes()[varargsIndex].getComponentType();
+        }
+
+        /**
+         * 调用选中的方法，可变参数方法的多余参数会先打包成数组。
+         *
+         * @param target 目标对象，静态方法时忽略
+         * @param args   实际参数
+         * @return 返回值
+         * @throws InvocationTargetException 如果目标方法抛出异常
+         */
+        public Object invoke(Object target, Object... args) throws InvocationTargetException {
+            return invoker.invoke(target, varargsIndex < 0 ? args : pack(args));
+        }
+
+        private Object[] pack(Object[] args) {
+            Object[] packed = Arrays.copyOf(args, varargsIndex + 1);
+            Object array = Array.newInstance(componentType, args.length - varargsIndex);
+            for (int i = varargsIndex; i < args.length; i++) {
+                Array.set(array, i - varargsIndex, args[i]);
+            }
+            packed[varargsIndex] = array;
+            return packed;
+        }
+    }
+}
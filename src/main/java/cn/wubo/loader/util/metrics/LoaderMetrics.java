@@ -0,0 +1,120 @@
+package cn.wubo.loader.util.metrics;
+
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.util.ClassUtils;
+
+/**
+ * 指标入口，编译、定义、加载和调用的代码通过这里记录指标。
+ * 没有设置指标记录器时不调用System.nanoTime，也不分配对象。
+ */
+public class LoaderMetrics {
+
+    private static final String METER_REGISTRY_CLASS = "io.micrometer.core.instrument.MeterRegistry";
+
+    private static volatile MetricsRecorder recorder;
+
+    private LoaderMetrics() {
+    }
+
+    /**
+     * 设置指标记录器。
+     *
+     * @param metricsRecorder 指标记录器，为null时关闭指标
+     */
+    public static void setRecorder(MetricsRecorder metricsRecorder) {
+        recorder = metricsRecorder;
+    }
+
+    /**
+     * 获取当前的指标记录器。
+     *
+     * @return 指标记录器，未开启指标时返回null
+     */
+    public static MetricsRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * 判断是否开启了指标。
+     *
+     * @return 开启时返回true
+     */
+    public static boolean isEnabled() {
+        return recorder != null;
+    }
+
+    /**
+     * 从Spring容器中查找唯一的MeterRegistry并绑定，类路径中没有Micrometer或容器中没有MeterRegistry时不开启指标。
+     *
+     * @param beanFactory Spring容器
+     */
+    public static void bind(ListableBeanFactory beanFactory) {
+        if (ClassUtils.isPresent(METER_REGISTRY_CLASS, LoaderMetrics.class.getClassLoader()))
+            MicrometerMetricsRecorder.bind(beanFactory);
+    }
+
+    /**
+     * 开始计时。
+     *
+     * @return 开始时间，未开启指标时返回0
+     */
+    public static long start() {
+        return recorder == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * 记录一次编译。
+     *
+     * @param sourceCount 源代码数量
+     * @param cached      是否命中编译缓存
+     * @param success     是否编译成功
+     * @param start       start返回的开始时间
+     */
+    public static void compiled(int sourceCount, boolean cached, boolean success, long start) {
+        MetricsRecorder current = recorder;
+        // 计时开始后才开启的指标不记录本次耗时
+        if (current != null && start != 0) current.compiled(sourceCount, cached, success, System.nanoTime() - start);
+    }
+
+    /**
+     * 记录一次类定义。
+     *
+     * @param classCount 本次定义的类数量
+     * @param start      start返回的开始时间
+     */
+    public static void defined(int classCount, long start) {
+        MetricsRecorder current = recorder;
+        if (current != null && start != 0) current.defined(classCount, System.nanoTime() - start);
+    }
+
+    /**
+     * 记录一次加载类。
+     *
+     * @param found 是否找到类
+     * @param start start返回的开始时间
+     */
+    public static void loaded(boolean found, long start) {
+        MetricsRecorder current = recorder;
+        if (current != null && start != 0) current.loaded(found, System.nanoTime() - start);
+    }
+
+    /**
+     * 记录一次findClass未在动态编译的类中找到类。
+     */
+    public static void classMissed() {
+        MetricsRecorder current = recorder;
+        if (current != null) current.classMissed();
+    }
+
+    /**
+     * 记录一次方法调用。
+     *
+     * @param clazz      目标类
+     * @param methodName 方法名
+     * @param start      start返回的开始时间
+     */
+    public static void invoked(Class<?> clazz, String methodName, long start) {
+        MetricsRecorder current = recorder;
+        if (current != null && start != 0) current.invoked(clazz, methodName, System.nanoTime() - start);
+    }
+}
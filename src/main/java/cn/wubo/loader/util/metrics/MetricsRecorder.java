@@ -0,0 +1,47 @@
+package cn.wubo.loader.util.metrics;
+
+/**
+ * 指标记录器，接收编译、定义、加载和调用的统计数据，耗时单位均为纳秒。
+ */
+public interface MetricsRecorder {
+
+    /**
+     * 记录一次编译。
+     *
+     * @param sourceCount 源代码数量
+     * @param cached      是否命中编译缓存
+     * @param success     是否编译成功
+     * @param nanos       耗时
+     */
+    void compiled(int sourceCount, boolean cached, boolean success, long nanos);
+
+    /**
+     * 记录一次类定义。
+     *
+     * @param classCount 本次定义的类数量
+     * @param nanos      耗时
+     */
+    void defined(int classCount, long nanos);
+
+    /**
+     * 记录一次通过动态类加载器加载类。
+     *
+     * @param found 是否找到类
+     * @param nanos 耗时
+     */
+    void loaded(boolean found, long nanos);
+
+    /**
+     * 记录一次findClass未在动态编译的类中找到类。
+     */
+    void classMissed();
+
+    /**
+     * 记录一次方法调用。
+     *
+     * @param clazz      目标类
+     * @param methodName 方法名
+     * @param nanos      耗时
+     */
+    void invoked(Class<?> clazz, String methodName, long nanos);
+}
@@ -0,0 +1,108 @@
+package cn.wubo.loader.util.metrics;
+
+import cn.wubo.loader.util.class_loader.DynamicClassLoader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ListableBeanFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于Micrometer的指标记录器，注册loader.compile、loader.define、loader.load、loader.invoke等指标。
+ */
+public class MicrometerMetricsRecorder implements MetricsRecorder {
+
+    private final MeterRegistry registry;
+
+    /**
+     * 编译计时器，下标为(cached ? 2 : 0) + (success ? 1 : 0)
+     */
+    private final Timer[] compileTimers = new Timer[4];
+
+    private final Counter compileSources;
+
+    private final Timer defineTimer;
+
+    private final Counter defineClasses;
+
+    private final Timer loadFoundTimer;
+
+    private final Timer loadNotFoundTimer;
+
+    private final Counter classMiss;
+
+    /**
+     * 方法调用计时器，按目标类和方法名缓存，目标类被卸载后随之释放
+     */
+    private final ClassValue<Map<String, Timer>> invokeTimers = new ClassValue<>() {
+        @Override
+        protected Map<String, Timer> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    /**
+     * 构造函数，注册固定标签的指标。
+     *
+     * @param registry Micrometer注册表
+     */
+    public MicrometerMetricsRecorder(MeterRegistry registry) {
+        this.registry = registry;
+        for (int i = 0; i < compileTimers.length; i++) {
+            compileTimers[i] = Timer.builder("loader.compile").description("动态编译耗时")
+                    .tag("cache", i >= 2 ? "hit" : "miss").tag("result", (i & 1) == 1 ? "success" : "failure").register(registry);
+        }
+        this.compileSources = Counter.builder("loader.compile.sources").description("动态编译的源代码数量").register(registry);
+        this.defineTimer = Timer.builder("loader.define").description("定义类的耗时").register(registry);
+        this.defineClasses = Counter.builder("loader.define.classes").description("定义的类数量").register(registry);
+        this.loadFoundTimer = Timer.builder("loader.load").description("加载类的耗时").tag("result", "found").register(registry);
+        this.loadNotFoundTimer = Timer.builder("loader.load").description("加载类的耗时").tag("result", "notfound").register(registry);
+        this.classMiss = Counter.builder("loader.class.miss").description("findClass未在动态编译的类中找到类的次数").register(registry);
+        // 动态类加载器清理后读取新的实例
+        Gauge.builder("loader.classes", () -> DynamicClassLoader.getInstance().getClassCount()).description("动态类加载器中的类数量").register(registry);
+    }
+
+    /**
+     * 从Spring容器中查找唯一的MeterRegistry，找到时开启指标。
+     *
+     * @param beanFactory Spring容器
+     */
+    static void bind(ListableBeanFactory beanFactory) {
+        beanFactory.getBeanProvider(MeterRegistry.class).ifUnique(meterRegistry -> LoaderMetrics.setRecorder(new MicrometerMetricsRecorder(meterRegistry)));
+    }
+
+    @Override
+    public void compiled(int sourceCount, boolean cached, boolean success, long nanos) {
+        compileTimers[(cached ? 2 : 0) + (success ? 1 : 0)].record(nanos, TimeUnit.NANOSECONDS);
+        if (!cached) compileSources.increment(sourceCount);
+    }
+
+    @Override
+    public void defined(int classCount, long nanos) {
+        defineTimer.record(nanos, TimeUnit.NANOSECONDS);
+        defineClasses.increment(classCount);
+    }
+
+    @Override
+    public void loaded(boolean found, long nanos) {
+        (found ? loadFoundTimer : loadNotFoundTimer).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void classMissed() {
+        classMiss.increment();
+    }
+
+    @Override
+    public void invoked(Class<?> clazz, String methodName, long nanos) {
+        Map<String, Timer> timerMap = invokeTimers.get(clazz);
+        Timer timer = timerMap.get(methodName);
+        if (timer == null) timer = timerMap.computeIfAbsent(methodName, name -> Timer.builder("loader.invoke").description("方法调用耗时")
+                .tag("class", clazz.getName()).tag("method", name).register(registry));
+        timer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -1,13 +1,69 @@
 import cn.wubo.loader.util.LoaderUtils;
 import cn.wubo.loader.util.MethodUtils;
 import cn.wubo.loader.util.SpringContextUtils;
+import cn.wubo.loader.util.class_loader.AsyncCompiler;
+import cn.wubo.loader.util.aspect.AspectChain;
+import cn.wubo.loader.util.aspect.IAspect;
+import cn.wubo.loader.util.aspect.LatencyHistogram;
+import cn.wubo.loader.util.aspect.MethodMatcher;
+import cn.wubo.loader.util.aspect.ProxyCache;
+import cn.wubo.loader.util.aspect.TimingAspect;
+import cn.wubo.loader.util.class_loader.BytecodeBufferPool;
+import cn.wubo.loader.util.class_loader.ClassPathIndex;
+import cn.wubo.loader.util.class_loader.DynamicClassLoader;
+import cn.wubo.loader.util.class_loader.FileManagerPool;
+import cn.wubo.loader.util.class_loader.JarArchive;
+import cn.wubo.loader.util.class_loader.JavaBuilder;
+import cn.wubo.loader.util.class_loader.JavaClassCache;
+import cn.wubo.loader.util.class_loader.JavaClassStore;
+import cn.wubo.loader.util.class_loader.JavaMemClass;
+import cn.wubo.loader.util.class_loader.LoaderLeakDetector;
+import cn.wubo.loader.util.class_loader.ParallelCompiler;
+import cn.wubo.loader.util.exception.LoaderRuntimeException;
+import cn.wubo.loader.util.method.InstanceCache;
+import cn.wubo.loader.util.method.InstanceStrategy;
+import cn.wubo.loader.util.method.MethodCache;
+import cn.wubo.loader.util.method.MethodInvoker;
+import cn.wubo.loader.util.metrics.LoaderMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import groovy.lang.GroovyClassLoader;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 @SpringBootTest(classes = SpringContextUtils.class)
 @AutoConfigureMockMvc
@@ -192,4 +248,1041 @@ class LoderUtilsTest {
         String str = (String) MethodUtils.invokeClass(clazz, "testMethod", "world");
         Assertions.assertEquals(str, "Hello,world!");
     }
+
+    @Test
+    void testCompilerCache() {
+        String javaSourceCode = """
+                package cn.wubo.loader.util;
+                                
+                public class TestClass8 {
+                                
+                    public String testMethod(String name){
+                        return String.format("Hello,%s!",name);
+                    }
+                }
+                """;
+        long hitCount = JavaClassCache.getInstance().getHitCount();
+        Class<?> clazz = LoaderUtils.compilerOnce(javaSourceCode, "cn.wubo.loader.util.TestClass8");
+        Class<?> clazz2 = LoaderUtils.compilerOnce(javaSourceCode, "cn.wubo.loader.util.TestClass8");
+        Assertions.assertEquals(hitCount + 1, JavaClassCache.getInstance().getHitCount());
+        Assertions.assertNotSame(clazz, clazz2);
+        String str = (String) MethodUtils.invokeClass(clazz2, "testMethod", "world");
+        Assertions.assertEquals(str, "Hello,world!");
+
+        // 选项、源码和依赖之间的边界不同时缓存键不同
+        Assertions.assertNotEquals(JavaClassCache.key(Map.of("c", "d"), List.of("a", "b")), JavaClassCache.key(Map.of("a", "b", "c", "d"), null));
+        Assertions.assertNotEquals(JavaClassCache.key(Map.of(), null, Map.of("a", new byte[]{1, 2})), JavaClassCache.key(Map.of(), null, Map.of("a", new byte[]{1}, "b", new byte[]{2})));
+    }
+
+    @Test
+    void testClassStore(@TempDir Path directory) throws Exception {
+        String javaSourceCode = """
+                package cn.wubo.loader.util;
+                                
+                public class TestClass9 {
+                                
+                    public String testMethod(String name){
+                        return String.format("Hello,%s!",name);
+                    }
+                }
+                """;
+        JavaClassStore.setInstance(new JavaClassStore(directory));
+        try {
+            LoaderUtils.compilerOnce(javaSourceCode, "cn.wubo.loader.util.TestClass9");
+        } finally {
+            JavaClassStore.getInstance().close();
+            JavaClassStore.setInstance(null);
+        }
+
+        try (JavaClassStore store = new JavaClassStore(directory);
+             DynamicClassLoader classLoader = new DynamicClassLoader(Thread.currentThread().getContextClassLoader())) {
+            Assertions.assertEquals(1, store.restore(classLoader));
+            Assertions.assertNull(store.get("cn.wubo.loader.util.TestClass9", JavaClassCache.key("cn.wubo.loader.util.TestClass9", "changed", null)));
+            Class<?> clazz = classLoader.loadClass("cn.wubo.loader.util.TestClass9");
+            String str = (String) MethodUtils.invokeClass(clazz, "testMethod", "world");
+            Assertions.assertEquals(str, "Hello,world!");
+
+            // 压缩后以及压缩失败后存储仍然可以读写
+            String key = JavaClassCache.key("cn.wubo.loader.util.TestClass9", javaSourceCode, null);
+            store.compact();
+            Assertions.assertNotNull(store.get("cn.wubo.loader.util.TestClass9", key));
+            try (var files = Files.list(directory)) {
+                Path dataFile = files.filter(Files::isRegularFile).findFirst().orElseThrow();
+                Files.createDirectory(dataFile.resolveSibling(dataFile.getFileName() + ".compact"));
+            }
+            Assertions.assertThrows(LoaderRuntimeException.class, store::compact);
+            Assertions.assertNotNull(store.get("cn.wubo.loader.util.TestClass9", key));
+            store.put("cn.wubo.loader.util.TestClass9", key, Map.of("cn.wubo.loader.util.TestClass9", new byte[]{1}));
+            Assertions.assertEquals(1, store.size());
+        }
+
+        // 批量编译后单独重新编译其中一个类，批量记录中的其他类仍然可以恢复
+        try (JavaClassStore store = new JavaClassStore(directory.resolve("batch"))) {
+            store.put("A,B", "batch", Map.of("A", new byte[]{1}, "B", new byte[]{2}));
+            store.put("A", "single", Map.of("A", new byte[]{3}));
+            Assertions.assertEquals(2, store.size());
+            store.compact();
+            Assertions.assertNotNull(store.get("A,B", "batch"));
+            store.put("B", "single", Map.of("B", new byte[]{4}));
+            store.compact();
+            Assertions.assertNull(store.get("A,B", "batch"));
+        }
+        try (JavaClassStore store = new JavaClassStore(directory.resolve("batch"));
+             DynamicClassLoader classLoader = new DynamicClassLoader(Thread.currentThread().getContextClassLoader())) {
+            Assertions.assertEquals(2, store.size());
+            Assertions.assertEquals(2, store.restore(classLoader));
+            store.invalidate("A");
+        }
+        try (JavaClassStore store = new JavaClassStore(directory.resolve("batch"));
+             DynamicClassLoader classLoader = new DynamicClassLoader(Thread.currentThread().getContextClassLoader())) {
+            Assertions.assertNull(store.get("A", "single"));
+            Assertions.assertEquals(1, store.restore(classLoader));
+        }
+    }
+
+    @Test
+    void testClassBatch() {
+        String javaSourceCode = """
+                package cn.wubo.loader.util;
+                                
+                public class TestClass10 extends TestClass11 {
+                                
+                    public String testMethod(String name){
+                        return greet(name);
+                    }
+                }
+                """;
+        String javaSourceCode2 = """
+                package cn.wubo.loader.util;
+                                
+                public class TestClass11 {
+                                
+                    public String greet(String name){
+                        return String.format("Hello,%s!",name);
+                    }
+                }
+                """;
+        Map<String, String> sources = new LinkedHashMap<>();
+        sources.put("cn.wubo.loader.util.TestClass10", javaSourceCode);
+        sources.put("cn.wubo.loader.util.TestClass11", javaSourceCode2);
+        LoaderUtils.compiler(sources);
+        Class<?> clazz = LoaderUtils.load("cn.wubo.loader.util.TestClass10");
+        String str = (String) MethodUtils.invokeClass(clazz, "testMethod", "world");
+        Assertions.assertEquals(str, "Hello,world!");
+
+        sources.put("cn.wubo.loader.util.TestClass11", javaSourceCode2.replace("String greet", "Integer greet"));
+        JavaBuilder javaBuilder = JavaBuilder.builder();
+        Assertions.assertThrows(LoaderRuntimeException.class, () -> javaBuilder.compiler(sources));
+        Assertions.assertTrue(javaBuilder.getDiagnostics().containsKey("cn.wubo.loader.util.TestClass10"));
+    }
+
+    @Test
+    void testFileManagerPool() {
+        String javaSourceCode = """
+                package cn.wubo.loader.util;
+                                
+                public class TestClass12 {
+                                
+                    public String testMethod(String name){
+                        return String.format("Hello,%s!",name);
+                    }
+                }
+                """;
+        FileManagerPool.getInstance().warmup(1);
+        Map<String, JavaMemClass> javaMemClassMap = JavaBuilder.builder().useCache(false).compiler(javaSourceCode, "cn.wubo.loader.util.TestClass12").getJavaMemClassMap();
+        Map<String, JavaMemClass> javaMemClassMap2 = JavaBuilder.builder().useCache(false).compiler(javaSourceCode.replace("Hello", "Hi"), "cn.wubo.loader.util.TestClass12").getJavaMemClassMap();
+        Assertions.assertEquals(1, javaMemClassMap.size());
+        Assertions.assertNotSame(javaMemClassMap.get("cn.wubo.loader.util.TestClass12"), javaMemClassMap2.get("cn.wubo.loader.util.TestClass12"));
+    }
+
+    @Test
+    void testClassPathIndex() throws IOException {
+        ClassPathIndex classPathIndex = ClassPathIndex.getInstance();
+        Assertions.assertNotNull(classPathIndex);
+        Assertions.assertTrue(classPathIndex.list("cn.wubo.loader.util", false).stream().anyMatch(indexedClass -> indexedClass.getBinaryName().equals(LoaderUtils.class.getName())));
+        Assertions.assertTrue(classPathIndex.list("lombok", true).size() > classPathIndex.list("lombok", false).size());
+        Assertions.assertTrue(classPathIndex.list("cn.hutool.core.util", false).isEmpty());
+
+        // 索引按类加载器分别构建
+        String jarPath = new File("./hutool-all-5.8.29.jar").getAbsolutePath();
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{new File(jarPath).toURI().toURL()}, getClass().getClassLoader())) {
+            Assertions.assertFalse(ClassPathIndex.getInstance(classLoader).list("cn.hutool.core.util", false).isEmpty());
+        }
+
+        // 编译选项中指定类路径时按指定的类路径查找
+        String javaSourceCode = """
+                package cn.wubo.loader.util;
+                                
+                import cn.hutool.core.util.IdUtil;
+                                
+                public class TestClass42 {
+                                
+                    public String testMethod(){
+                        return IdUtil.randomUUID();
+                    }
+                }
+                """;
+        Assertions.assertTrue(JavaBuilder.builder().options(List.of("-classpath", jarPath)).compiler(javaSourceCode, "cn.wubo.loader.util.TestClass42").getJavaMemClassMap().containsKey("cn.wubo.loader.util.TestClass42"));
+    }
+
+    @Test
+    void testClassIncremental() {
+        String javaSourceCode = """
+                package cn.wubo.loader.util;
+                                
+                public class TestClass13 {
+                                
+                    public static String greet(String name){
+                        return String.format("Hello,%s!",name);
+                    }
+                }
+                """;
+        String javaSourceCode2 = """
+                package cn.wubo.loader.util;
+                                
+                public class TestClass14 {
+                                
+                    public String testMethod(String name){
+                        return TestClass13.greet(name);
+                    }
+                }
+                """;
+        String javaSourceCode3 = """
+                package cn.wubo.loader.util;
+                                
+                public class TestClass15 {
+                                
+                    public String testMethod(String name){
+                        return String.format("Hello,%s!",name);
+                    }
+                }
+                """;
+        Map<String, String> sources = new LinkedHashMap<>();
+        sources.put("cn.wubo.loader.util.TestClass13", javaSourceCode);
+        sources.put("cn.wubo.loader.util.TestClass14", javaSourceCode2);
+        sources.put("cn.wubo.loader.util.TestClass15", javaSourceCode3);
+        Assertions.assertEquals(3, LoaderUtils.compilerIncremental(sources).size());
+        Assertions.assertEquals("Hello,world!", MethodUtils.invokeClass(LoaderUtils.loadIncremental("cn.wubo.loader.util.TestClass14"), "testMethod", "world"));
+
+        Set<String> recompiled = LoaderUtils.compilerIncremental(Map.of("cn.wubo.loader.util.TestClass13", javaSourceCode.replace("Hello", "Hi")));
+        Assertions.assertEquals(Set.of("cn.wubo.loader.util.TestClass13", "cn.wubo.loader.util.TestClass14"), recompiled);
+        Assertions.assertEquals("Hi,world!", MethodUtils.invokeClass(LoaderUtils.loadIncremental("cn.wubo.loader.util.TestClass14"), "testMethod", "world"));
+        Assertions.assertEquals("Hello,world!", MethodUtils.invokeClass(LoaderUtils.loadIncremental("cn.wubo.loader.util.TestClass15"), "testMethod", "world"));
+    }
+
+    @Test
+    void testClassParallel() {
+        String javaSourceCode = """
+                package cn.wubo.loader.util;
+                                
+                public class TestClass%s {
+                                
+                    public String testMethod(String name){
+                        return String.format("Hello,%%s!",name);
+                    }
+                }
+                """;
+        String javaSourceCode2 = """
+                package cn.wubo.loader.util;
+                                
+                public class TestClass20 extends TestClass16 {
+                }
+                """;
+        Map<String, String> sources = new LinkedHashMap<>();
+        for (int i = 16; i < 20; i++) {
+            sources.put("cn.wubo.loader.util.TestClass" + i, javaSourceCode.formatted(i));
+        }
+        sources.put("cn.wubo.loader.util.TestClass20", javaSourceCode2);
+        try (ParallelCompiler parallelCompiler = new ParallelCompiler(2)) {
+            ParallelCompiler.Result result = parallelCompiler.compiler(sources);
+            Assertions.assertEquals(5, result.getJavaMemClassMap().size());
+            Assertions.assertTrue(result.getStageNanos().containsKey("compile-1"));
+        }
+        Class<?> clazz = LoaderUtils.load("cn.wubo.loader.util.TestClass20");
+        String str = (String) MethodUtils.invokeClass(clazz.getSuperclass(), "testMethod", "world");
+        Assertions.assertEquals(str, "Hello,world!");
+
+        // 任意批次编译失败时，编译成功的批次归还直接内存
+        Map<String, String> failedSources = new LinkedHashMap<>();
+        failedSources.put("cn.wubo.loader.util.TestClass38", javaSourceCode.formatted(38));
+        failedSources.put("cn.wubo.loader.util.TestClass39", "package cn.wubo.loader.util; public class TestClass39 { error }");
+        // 保证池中有空闲缓冲区，编译成功的批次借出后归还，池中的总容量不变
+        BytecodeBufferPool.getInstance().release(BytecodeBufferPool.getInstance().acquire(4096));
+        long pooledBytes = BytecodeBufferPool.getInstance().getPooledBytes();
+        try (ParallelCompiler parallelCompiler = new ParallelCompiler(2)) {
+            Assertions.assertThrows(LoaderRuntimeException.class, () -> parallelCompiler.compiler(failedSources));
+        }
+        Assertions.assertEquals(pooledBytes, BytecodeBufferPool.getInstance().getPooledBytes());
+    }
+
+    @Test
+    void testClassAsync() {
+        String javaSourceCode = """
+                package cn.wubo.loader.util;
+                                
+                public class TestClass21 {
+                                
+                    public String testMethod(String name){
+                        return String.format("Hello,%s!",name);
+                    }
+                }
+                """;
+        long coalescedCount = AsyncCompiler.getInstance().getCoalescedCount();
+        CompletableFuture<Class<?>> future1 = LoaderUtils.compilerAsync(javaSourceCode, "cn.wubo.loader.util.TestClass21");
+        CompletableFuture<Class<?>> future2 = LoaderUtils.compilerAsync(javaSourceCode, "cn.wubo.loader.util.TestClass21");
+        Class<?> clazz = future1.join();
+        Class<?> clazz2 = future2.handle((result, e) -> result).join();
+        // 第二个请求在编译期间提交时会合并到第一个请求上，两者得到同一个类
+        if (AsyncCompiler.getInstance().getCoalescedCount() > coalescedCount) Assertions.assertSame(clazz, clazz2);
+        String str = (String) MethodUtils.invokeClass(clazz, "testMethod", "world");
+        Assertions.assertEquals(str, "Hello,world!");
+
+        CompletableFuture<Class<?>> future3 = LoaderUtils.compilerOnceAsync("public class TestClass22 { int i = ; }", "TestClass22");
+        Assertions.assertThrows(Exception.class, future3::join);
+        Assertions.assertEquals(0, AsyncCompiler.getInstance().getInFlightCount());
+
+        // 线程池拒绝执行时不保留正在执行的任务
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        AsyncCompiler asyncCompiler = new AsyncCompiler(executor);
+        for (int i = 0; i < 2; i++) {
+            Assertions.assertThrows(RejectedExecutionException.class, () -> asyncCompiler.submit("rejected", () -> "result"));
+        }
+        Assertions.assertEquals(0, asyncCompiler.getInFlightCount());
+
+        // 合并的请求得到独立的结果，取消其中一个不影响其他请求
+        CountDownLatch latch = new CountDownLatch(1);
+        ExecutorService blockingExecutor = Executors.newSingleThreadExecutor();
+        AsyncCompiler blockingCompiler = new AsyncCompiler(blockingExecutor, 1);
+        CompletableFuture<String> first = blockingCompiler.submit("coalesced", () -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "result";
+        });
+        CompletableFuture<String> second = blockingCompiler.submit("coalesced", () -> "other");
+        Assertions.assertNotSame(first, second);
+        first.cancel(true);
+        latch.countDown();
+        Assertions.assertEquals("result", second.join());
+        blockingExecutor.shutdown();
+    }
+
+    @Test
+    void testMethodCache() throws NoSuchMethodException {
+        String javaSourceCode = """
+                package cn.wubo.loader.util;
+                                
+                public class TestClass23 {
+                                
+                    private String testMethod(String name){
+                        return String.format("Hello,%s!",name);
+                    }
+                }
+                """;
+        Class<?> clazz = LoaderUtils.compilerOnce(javaSourceCode, "cn.wubo.loader.util.TestClass23");
+        for (int i = 0; i < 3; i++) {
+            String str = (String) MethodUtils.invokeClass(clazz, "testMethod", "world");
+            Assertions.assertEquals(str, "Hello,world!");
+        }
+        Method method = MethodCache.getDeclaredMethod(clazz, "testMethod", String.class);
+        Assertions.assertSame(method, MethodCache.getDeclaredMethod(clazz, "testMethod", String.class));
+        MethodCache.clear();
+        Assertions.assertNotSame(method, MethodCache.getDeclaredMethod(clazz, "testMethod", String.class));
+        Assertions.assertThrows(NoSuchMethodException.class, () -> MethodCache.getDeclaredMethod(clazz, "testMethod", Integer.class));
+        // 调用方修改参数类型数组后缓存不受影响
+        Class<?>[] parameterTypes = {String.class};
+        Method cached = MethodCache.getDeclaredMethod(clazz, "testMethod", parameterTypes);
+        parameterTypes[0] = Integer.class;
+        Assertions.assertThrows(NoSuchMethodException.class, () -> MethodCache.getDeclaredMethod(clazz, "testMethod", parameterTypes));
+        Assertions.assertSame(cached, MethodCache.getDeclaredMethod(clazz, "testMethod", String.class));
+    }
+
+    @Test
+    void testMethodInvoker() throws Throwable {
+        String javaSourceCode = """
+                package cn.wubo.loader.util;
+                                
+                public class TestClass24 {
+                                
+                    public String testMethod(String name){
+                        return String.format("Hello,%s!",name);
+                    }
+                                
+                    private static int add(int a, int b){
+                        return a + b;
+                    }
+                                
+                    public void fail(){
+                        throw new IllegalStateException("fail");
+                    }
+                }
+                """;
+        Class<?> clazz = LoaderUtils.compilerOnce(javaSourceCode, "cn.wubo.loader.util.TestClass24");
+        Object target = clazz.getConstructor().newInstance();
+        MethodInvoker invoker = MethodCache.getInvoker(clazz, "testMethod", String.class);
+        Assertions.assertEquals("Hello,world!", invoker.invoke(target, "world"));
+        Assertions.assertEquals("Hello,world!", invoker.getTypedHandle().invoke(target, "world"));
+
+        MethodInvoker staticInvoker = MethodCache.getDeclaredInvoker(clazz, "add", int.class, int.class);
+        Assertions.assertEquals(3, staticInvoker.invoke(null, 1, 2));
+        Assertions.assertEquals(3, (int) staticInvoker.getTypedHandle().invokeExact(1, 2));
+
+        InvocationTargetException e = Assertions.assertThrows(InvocationTargetException.class, () -> MethodCache.getInvoker(clazz, "fail").invoke(target));
+        Assertions.assertInstanceOf(IllegalStateException.class, e.getCause());
+        // 参数不匹配时与Method.invoke相同抛出IllegalArgumentException
+        Assertions.assertThrows(IllegalArgumentException.class, () -> invoker.invoke(target, 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> invoker.invoke("target", "world"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> staticInvoker.invoke(null, 1, null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> staticInvoker.invoke(null, 1));
+        Assertions.assertEquals(3, staticInvoker.invoke(null, (byte) 1, (short) 2));
+    }
+
+    @Test
+    void testInstanceStrategy() throws Exception {
+        String javaSourceCode = """
+                package cn.wubo.loader.util;
+                                
+                public class TestClass25 {
+                                
+                    public static int count;
+                                
+                    public TestClass25(){
+                        count++;
+                    }
+                                
+                    public String testMethod(String name){
+                        return String.format("Hello,%s!",name);
+                    }
+                }
+                """;
+        Class<?> clazz = LoaderUtils.compilerOnce(javaSourceCode, "cn.wubo.loader.util.TestClass25");
+        try {
+            for (InstanceStrategy strategy : InstanceStrategy.values()) {
+                InstanceCache.setStrategy("cn.wubo.loader.util.TestClass25", strategy);
+                clazz.getField("count").setInt(null, 0);
+                for (int i = 0; i < 3; i++) {
+                    String str = (String) MethodUtils.invokeClass(clazz, "testMethod", "world");
+                    Assertions.assertEquals(str, "Hello,world!");
+                }
+                Assertions.assertEquals(strategy == InstanceStrategy.PROTOTYPE ? 3 : 1, clazz.getField("count").getInt(null));
+            }
+            // 清理后线程本地变量不再引用实例，实例可以被垃圾回收
+            InstanceCache.setStrategy("cn.wubo.loader.util.TestClass25", InstanceStrategy.THREAD_LOCAL);
+            WeakReference<Object> instance = new WeakReference<>(InstanceCache.getProvider(clazz).acquire());
+            InstanceCache.clear();
+            for (int i = 0; i < 10 && instance.get() != null; i++) {
+                System.gc();
+                Thread.sleep(10);
+            }
+            Assertions.assertNull(instance.get());
+        } finally {
+            InstanceCache.setStrategy("cn.wubo.loader.util.TestClass25", null);
+        }
+    }
+
+    @Test
+    void testOverloadResolution() {
+        String javaSourceCode = """
+                package cn.wubo.loader.util;
+                                
+                public class TestClass26 {
+                                
+                    public String m(int a){ return "int"; }
+                                
+                    public String m(long a){ return "long"; }
+                                
+                    public String m(Object o){ return "object"; }
+                                
+                    public String m(String s){ return "string"; }
+                                
+                    public String m(CharSequence c){ return "charSequence"; }
+                                
+                    public String m(String... parts){ return "varargs" + parts.length; }
+                                
+                    public long add(long a, long b){ return a + b; }
+                                
+                    public String n(Object o){ return "object"; }
+                                
+                    public String n(String s){ return "string"; }
+                }
+                """;
+        Class<?> clazz = LoaderUtils.compilerOnce(javaSourceCode, "cn.wubo.loader.util.TestClass26");
+        Assertions.assertEquals("int", MethodUtils.invokeClass(clazz, "m", 1));
+        Assertions.assertEquals("long", MethodUtils.invokeClass(clazz, "m", 1L));
+        Assertions.assertEquals("string", MethodUtils.invokeClass(clazz, "m", "a"));
+        Assertions.assertEquals("charSequence", MethodUtils.invokeClass(clazz, "m", new StringBuilder()));
+        Assertions.assertEquals("object", MethodUtils.invokeClass(clazz, "m", 1.0));
+        Assertions.assertEquals("string", MethodUtils.invokeClass(clazz, "n", (Object) null));
+        // 与Java编译器相同，m(String)和m(String...)对null同样具体
+        Assertions.assertThrows(LoaderRuntimeException.class, () -> MethodUtils.invokeClass(clazz, "m", (Object) null));
+        Assertions.assertEquals("varargs2", MethodUtils.invokeClass(clazz, "m", "a", "b"));
+        Assertions.assertEquals("varargs0", MethodUtils.invokeClass(clazz, "m"));
+        Assertions.assertEquals(3L, MethodUtils.invokeClass(clazz, "add", 1, 2));
+        Assertions.assertThrows(LoaderRuntimeException.class, () -> MethodUtils.invokeClass(clazz, "add", 1, "2"));
+    }
+
+    @Test
+    void testProxyCache() throws Exception {
+        String javaSourceCode = """
+                package cn.wubo.loader.util;
+                                
+                public class TestClass27 {
+                                
+                    public String testMethod(String name){
+                        return String.format("Hello,%s!",name);
+                    }
+                                
+                    public void fail(){
+                        throw new IllegalStateException("fail");
+                    }
+                }
+                """;
+        Class<?> clazz = LoaderUtils.compilerOnce(javaSourceCode, "cn.wubo.loader.util.TestClass27");
+        CountAspect aspect = new CountAspect();
+        Object proxy1 = MethodUtils.proxy(clazz.getConstructor().newInstance(), aspect);
+        Object proxy2 = MethodUtils.proxy(clazz.getConstructor().newInstance(), aspect);
+        Assertions.assertSame(proxy1.getClass(), proxy2.getClass());
+        Assertions.assertEquals("Hello,world!", MethodUtils.invokeClass(proxy1, "testMethod", "world"));
+        Assertions.assertEquals("Hello,world!", MethodUtils.invokeClass(proxy2, "testMethod", "world"));
+        Assertions.assertEquals(2, aspect.after);
+        // 目标方法抛出的异常不再包装，切面收到原始异常
+        Assertions.assertThrows(LoaderRuntimeException.class, () -> MethodUtils.invokeClass(proxy1, "fail"));
+        Assertions.assertInstanceOf(IllegalStateException.class, aspect.cause);
+    }
+
+    @Test
+    void testProxyConstructorCall() throws Exception {
+        String javaSourceCode = """
+                package cn.wubo.loader.util;
+
+                public class TestClass40 {
+
+                    private String greeting;
+
+                    public TestClass40(){
+                        init();
+                    }
+
+                    public void init(){
+                        greeting = "Hello";
+                    }
+
+                    public String testMethod(String name){
+                        return greeting + "," + name + "!";
+                    }
+                }
+                """;
+        Class<?> clazz = LoaderUtils.compilerOnce(javaSourceCode, "cn.wubo.loader.util.TestClass40");
+        // 代理对象的构造函数中调用可以被重写的方法时不会失败
+        Object proxy = MethodUtils.proxy(clazz.getConstructor().newInstance(), new TimingAspect());
+        Assertions.assertEquals("Hello,world!", MethodUtils.invokeClass(proxy, "testMethod", "world"));
+        AspectChain chain = AspectChain.builder().aspect(MethodMatcher.nameMatches("test.*"), new TimingAspect()).build();
+        Object chainProxy = MethodUtils.proxy(clazz.getConstructor().newInstance(), chain);
+        Assertions.assertEquals("Hello,world!", MethodUtils.invokeClass(chainProxy, "testMethod", "world"));
+    }
+
+    static class CountAspect implements IAspect {
+
+        int after;
+
+        Throwable cause;
+
+        @Override
+        public void before(Object target, Method method, Object[] args) {
+        }
+
+        @Override
+        public void after(Object target, Method method, Object[] args, Object result) {
+            after++;
+        }
+
+        @Override
+        public void afterThrow(Object target, Method method, Object[] args, Throwable cause) {
+            this.cause = cause;
+        }
+    }
+
+    @Test
+    void testTimingAspect() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 990; i++) histogram.record(1_000);
+        for (int i = 0; i < 10; i++) histogram.record(1_000_000);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assertions.assertEquals(1000, snapshot.getCount());
+        Assertions.assertEquals(1_000, snapshot.getP50(), 125);
+        Assertions.assertEquals(1_000_000, snapshot.getP999(), 125_000);
+        Assertions.assertEquals(1_000_000, snapshot.getMax());
+
+        String javaSourceCode = """
+                package cn.wubo.loader.util;
+                                
+                public class TestClass28 {
+                                
+                    public String testMethod(String name){
+                        return String.format("Hello,%s!",name);
+                    }
+                }
+                """;
+        Class<?> clazz = LoaderUtils.compilerOnce(javaSourceCode, "cn.wubo.loader.util.TestClass28");
+        try (TimingAspect aspect = new TimingAspect()) {
+            Object proxy = MethodUtils.proxy(clazz.getConstructor().newInstance(), aspect);
+            Thread[] threads = new Thread[4];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread(() -> {
+                    for (int j = 0; j < 100; j++) MethodUtils.invokeClass(proxy, "testMethod", "world");
+                });
+                threads[i].start();
+            }
+            for (Thread thread : threads) thread.join();
+            Assertions.assertEquals(400, aspect.snapshot().get("cn.wubo.loader.util.TestClass28.testMethod").getCount());
+            aspect.report();
+            Assertions.assertEquals(0, aspect.snapshot().get("cn.wubo.loader.util.TestClass28.testMethod").getCount());
+            // 替换动态类加载器后不再持有旧类的方法
+            DynamicClassLoader.clear();
+            Assertions.assertFalse(aspect.snapshot().containsKey("cn.wubo.loader.util.TestClass28.testMethod"));
+        }
+    }
+
+    @Test
+    void testAspectChain() throws Exception {
+        String javaSourceCode = """
+                package cn.wubo.loader.util;
+                                
+                public class TestClass29 {
+                                
+                    public String testMethod(String name){
+                        return String.format("Hello,%s!",name);
+                    }
+                                
+                    @Deprecated
+                    public String other(){
+                        return "other";
+                    }
+                                
+                    public String plain(){
+                        return "plain";
+                    }
+                }
+                """;
+        Class<?> clazz = LoaderUtils.compilerOnce(javaSourceCode, "cn.wubo.loader.util.TestClass29");
+        List<String> events = new ArrayList<>();
+        AspectChain chain = AspectChain.builder()
+                .aspect(MethodMatcher.nameMatches("test.*").or(MethodMatcher.annotatedWith(Deprecated.class)), new RecordAspect("a", events))
+                .aspect(MethodMatcher.nameMatches("test.*"), new RecordAspect("b", events))
+                .build();
+        Object proxy = MethodUtils.proxy(clazz.getConstructor().newInstance(), chain);
+        Assertions.assertSame(proxy.getClass(), MethodUtils.proxy(clazz.getConstructor().newInstance(), chain).getClass());
+        // 清空代理缓存后，被拦截的方法相同的切面链复用CGLIB已经生成的代理类
+        ProxyCache.clear();
+        Assertions.assertSame(proxy.getClass(), MethodUtils.proxy(clazz.getConstructor().newInstance(), chain).getClass());
+
+        Assertions.assertEquals("Hello,world!", MethodUtils.invokeClass(proxy, "testMethod", "world"));
+        Assertions.assertEquals(List.of("a.before", "b.before", "b.after", "a.after"), events);
+        events.clear();
+        Assertions.assertEquals("other", MethodUtils.invokeClass(proxy, "other"));
+        Assertions.assertEquals(List.of("a.before", "a.after"), events);
+        events.clear();
+        Assertions.assertEquals("plain", MethodUtils.invokeClass(proxy, "plain"));
+        proxy.toString();
+        Assertions.assertTrue(events.isEmpty());
+    }
+
+    @Test
+    void testMetrics() {
+        String javaSourceCode = """
+                package cn.wubo.loader.util;
+                                
+                public class TestClass30 {
+                                
+                    public String testMethod(String name){
+                        return String.format("Hello,%s!",name);
+                    }
+                }
+                """;
+        Assertions.assertFalse(LoaderMetrics.isEnabled());
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        LoaderMetrics.bind(new StaticListableBeanFactory(Map.of("meterRegistry", registry)));
+        try {
+            Assertions.assertTrue(LoaderMetrics.isEnabled());
+            LoaderUtils.compiler(javaSourceCode, "cn.wubo.loader.util.TestClass30");
+            Class<?> clazz = LoaderUtils.load("cn.wubo.loader.util.TestClass30");
+            Assertions.assertEquals("Hello,world!", MethodUtils.invokeClass(clazz, "testMethod", "world"));
+            Assertions.assertThrows(LoaderRuntimeException.class, () -> LoaderUtils.load("cn.wubo.loader.util.TestClass30Missing"));
+
+            Assertions.assertEquals(1, registry.get("loader.compile").tag("result", "success").timers().stream().mapToLong(timer -> timer.count()).sum());
+            Assertions.assertTrue(registry.get("loader.define.classes").counter().count() >= 1);
+            Assertions.assertTrue(registry.get("loader.classes").gauge().value() >= 1);
+            Assertions.assertEquals(1, registry.get("loader.load").tag("result", "found").timer().count());
+            Assertions.assertEquals(1, registry.get("loader.load").tag("result", "notfound").timer().count());
+            Assertions.assertTrue(registry.get("loader.class.miss").counter().count() >= 1);
+            Assertions.assertEquals(1, registry.get("loader.invoke").tag("class", "cn.wubo.loader.util.TestClass30").tag("method", "testMethod").timer().count());
+        } finally {
+            LoaderMetrics.setRecorder(null);
+        }
+    }
+
+    @Test
+    void testConcurrentClassLoader() throws Exception {
+        Map<String, String> sources = new LinkedHashMap<>();
+        for (int i = 0; i < 16; i++) {
+            sources.put("cn.wubo.loader.util.TestClass31_" + i, """
+                    package cn.wubo.loader.util;
+                                    
+                    public class TestClass31_%d extends TestClass31_Base {
+                    }
+                    """.formatted(i));
+        }
+        sources.put("cn.wubo.loader.util.TestClass31_Base", """
+                package cn.wubo.loader.util;
+                                
+                public class TestClass31_Base {
+                }
+                """);
+        Map<String, byte[]> classDataMap = new LinkedHashMap<>();
+        JavaBuilder.builder().compiler(sources).getJavaMemClassMap().forEach((name, javaMemClass) -> classDataMap.put(name, javaMemClass.getBytes()));
+
+        DynamicClassLoader classLoader = new DynamicClassLoader(getClass().getClassLoader());
+        Assertions.assertTrue(classLoader.isRegisteredAsParallelCapable());
+        classLoader.addClassMap("cn.wubo.loader.util.TestClass31_Base", classDataMap.get("cn.wubo.loader.util.TestClass31_Base"));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CyclicBarrier barrier = new CyclicBarrier(8);
+        try {
+            List<Future<Map<String, Class<?>>>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    // 每个线程同时定义两个类，然后同时加载所有的类
+                    Map<String, byte[]> own = new LinkedHashMap<>();
+                    own.put("cn.wubo.loader.util.TestClass31_" + thread * 2, classDataMap.get("cn.wubo.loader.util.TestClass31_" + thread * 2));
+                    own.put("cn.wubo.loader.util.TestClass31_" + (thread * 2 + 1), classDataMap.get("cn.wubo.loader.util.TestClass31_" + (thread * 2 + 1)));
+                    classLoader.addClassMap(own);
+                    barrier.await();
+                    Map<String, Class<?>> loaded = new LinkedHashMap<>();
+                    for (String name : sources.keySet()) {
+                        loaded.put(name, classLoader.loadClass(name));
+                    }
+                    return loaded;
+                }));
+            }
+            Map<String, Class<?>> first = futures.get(0).get();
+            for (Future<Map<String, Class<?>>> future : futures) {
+                Assertions.assertEquals(first, future.get());
+            }
+            Assertions.assertEquals(17, classLoader.getClassCount());
+            Assertions.assertSame(first.get("cn.wubo.loader.util.TestClass31_Base"), first.get("cn.wubo.loader.util.TestClass31_3").getSuperclass());
+        } finally {
+            executor.shutdown();
+            classLoader.close();
+        }
+    }
+
+    @Test
+    void testRedeploy() throws Exception {
+        String javaSourceCode = """
+                package cn.wubo.loader.util;
+                                
+                public class TestClass32 {
+                                
+                    public String testMethod(String name){
+                        return String.format("%s,%%s!",name);
+                    }
+                }
+                """;
+        LoaderUtils.addJarPath("./hutool-all-5.8.29.jar");
+        LoaderUtils.compiler(javaSourceCode.formatted("Hello"), "cn.wubo.loader.util.TestClass32");
+        DynamicClassLoader previous = DynamicClassLoader.getInstance();
+        Class<?> oldClass = LoaderUtils.load("cn.wubo.loader.util.TestClass32");
+        Object oldTarget = oldClass.getConstructor().newInstance();
+
+        DynamicClassLoader next = LoaderUtils.redeployAsync(Map.of("cn.wubo.loader.util.TestClass32", javaSourceCode.formatted("Hi"))).get();
+        Assertions.assertSame(next, DynamicClassLoader.getInstance());
+        Assertions.assertTrue(next.getGeneration() > previous.getGeneration());
+        Assertions.assertEquals("Hi,world!", MethodUtils.invokeClass(LoaderUtils.load("cn.wubo.loader.util.TestClass32"), "testMethod", "world"));
+        // 持有旧类的调用继续使用旧一代，jar沿用到新一代
+        Assertions.assertEquals("Hello,world!", MethodUtils.invokeClass(oldTarget, "testMethod", "world"));
+        Assertions.assertNotNull(LoaderUtils.load("cn.hutool.core.util.IdUtil"));
+
+        // 编译失败时不替换当前一代
+        Assertions.assertThrows(LoaderRuntimeException.class, () -> LoaderUtils.redeploy(Map.of("cn.wubo.loader.util.TestClass32", "error")));
+        Assertions.assertSame(next, DynamicClassLoader.getInstance());
+    }
+
+    @Test
+    void testLeakDetector() {
+        String javaSourceCode = """
+                package cn.wubo.loader.util;
+                                
+                public class TestClass33 {
+                                
+                    public String testMethod(String name){
+                        return String.format("Hello,%s!",name);
+                    }
+                }
+                """;
+        DynamicClassLoader generation = LoaderUtils.redeploy(Map.of("cn.wubo.loader.util.TestClass33", javaSourceCode));
+        String beanName = LoaderUtils.registerSingleton(LoaderUtils.load("cn.wubo.loader.util.TestClass33"));
+        LoaderUtils.clear();
+        try {
+            LoaderLeakDetector.Generation retired = LoaderLeakDetector.getInstance().suspects(0).stream()
+                    .filter(item -> item.getGeneration() == generation.getGeneration()).findFirst().orElseThrow();
+            Assertions.assertFalse(retired.isCurrent());
+            Assertions.assertEquals(1, retired.getClassCount());
+            Assertions.assertTrue(retired.getBytecodeSize() > 0);
+            Assertions.assertTrue(retired.getPins().contains("bean:" + beanName));
+            Assertions.assertTrue(LoaderLeakDetector.getInstance().report().stream().anyMatch(LoaderLeakDetector.Generation::isCurrent));
+            Assertions.assertTrue(LoaderLeakDetector.getMetaspaceUsed() > 0);
+        } finally {
+            SpringContextUtils.destroy(beanName);
+        }
+    }
+
+    @Test
+    void testLazyDefine() throws Exception {
+        String javaSourceCode = """
+                package cn.wubo.loader.util;
+                                
+                public class TestClass34 {
+                                
+                    public String testMethod(String name){
+                        Runnable runnable = new Runnable() {
+                            public void run() {
+                            }
+                        };
+                        return new Inner().hello(name);
+                    }
+                                
+                    static class Inner {
+                        String hello(String name){
+                            return String.format("Hello,%s!",name);
+                        }
+                    }
+                                
+                    static class Unused {
+                    }
+                }
+                """;
+        Map<String, byte[]> classDataMap = new LinkedHashMap<>();
+        JavaBuilder.builder().compiler(javaSourceCode, "cn.wubo.loader.util.TestClass34").getJavaMemClassMap().forEach((name, javaMemClass) -> classDataMap.put(name, javaMemClass.getBytes()));
+        Assertions.assertEquals(4, classDataMap.size());
+
+        try (DynamicClassLoader classLoader = new DynamicClassLoader(getClass().getClassLoader())) {
+            classLoader.addClassMap(classDataMap);
+            Assertions.assertEquals(0, classLoader.getClassCount());
+            Assertions.assertEquals(4, classLoader.getPendingCount());
+            Class<?> clazz = classLoader.loadClass("cn.wubo.loader.util.TestClass34");
+            Assertions.assertEquals("Hello,world!", MethodUtils.invokeClass(clazz, "testMethod", "world"));
+            // 调用过程中用到的内部类和匿名类按需定义，未使用的内部类不定义，字节码仍保留
+            Assertions.assertEquals(3, classLoader.getClassCount());
+            Assertions.assertEquals(1, classLoader.getPendingCount());
+            Assertions.assertThrows(LinkageError.class, () -> classLoader.addClassMap("cn.wubo.loader.util.TestClass34", classDataMap.get("cn.wubo.loader.util.TestClass34")));
+        }
+
+        try (DynamicClassLoader classLoader = new DynamicClassLoader(getClass().getClassLoader())) {
+            classLoader.addClassMap(classDataMap, true);
+            Assertions.assertEquals(4, classLoader.getClassCount());
+            Assertions.assertEquals(0, classLoader.getPendingCount());
+        }
+    }
+
+    @Test
+    void testMissCache() throws Exception {
+        String javaSourceCode = """
+                package cn.wubo.loader.util;
+                                
+                public class TestClass35 {
+                }
+                """;
+        Map<String, byte[]> classDataMap = new LinkedHashMap<>();
+        JavaBuilder.builder().compiler(javaSourceCode, "cn.wubo.loader.util.TestClass35").getJavaMemClassMap().forEach((name, javaMemClass) -> classDataMap.put(name, javaMemClass.getBytes()));
+
+        try (DynamicClassLoader parent = new DynamicClassLoader(getClass().getClassLoader());
+             DynamicClassLoader classLoader = new DynamicClassLoader(parent)) {
+            for (int i = 0; i < 3; i++) {
+                Assertions.assertThrows(ClassNotFoundException.class, () -> classLoader.loadClass("cn.wubo.loader.util.TestClass35"));
+                Assertions.assertThrows(ClassNotFoundException.class, () -> classLoader.loadClass("cn.hutool.core.util.IdUtil"));
+            }
+            // 无关的类加载器添加类不会使未命中缓存失效，命中缓存时抛出的异常不填充调用栈
+            try (DynamicClassLoader other = new DynamicClassLoader(getClass().getClassLoader())) {
+                other.addClassMap(classDataMap);
+            }
+            Assertions.assertEquals(0, Assertions.assertThrows(ClassNotFoundException.class, () -> classLoader.loadClass("cn.wubo.loader.util.TestClass35")).getStackTrace().length);
+            // 父类加载器添加类或自身添加jar后，之前未找到的类可以加载
+            parent.addClassMap(classDataMap);
+            Assertions.assertSame(parent, classLoader.loadClass("cn.wubo.loader.util.TestClass35").getClassLoader());
+            classLoader.addURL(new URL("jar:file:" + new File("./hutool-all-5.8.29.jar").getAbsolutePath() + "!/"));
+            Assertions.assertNotNull(classLoader.loadClass("cn.hutool.core.util.IdUtil"));
+        }
+
+        // 未找到之后通过Lookup.defineClass定义的类可以加载
+        byte[] lookupClassData = JavaBuilder.builder().compiler("""
+                package cn.wubo.loader.util;
+                                
+                public class TestClass41 {
+                }
+                """, "cn.wubo.loader.util.TestClass41").getJavaMemClassMap().get("cn.wubo.loader.util.TestClass41").getBytes();
+        try (DynamicClassLoader classLoader = new DynamicClassLoader(getClass().getClassLoader())) {
+            classLoader.addClassMap(classDataMap);
+            Class<?> hostClass = classLoader.loadClass("cn.wubo.loader.util.TestClass35");
+            Assertions.assertThrows(ClassNotFoundException.class, () -> classLoader.loadClass("cn.wubo.loader.util.TestClass41"));
+            Class<?> clazz = MethodHandles.privateLookupIn(hostClass, MethodHandles.lookup()).defineClass(lookupClassData);
+            Assertions.assertSame(clazz, classLoader.loadClass("cn.wubo.loader.util.TestClass41"));
+        }
+    }
+
+    @Test
+    void testJarIndex() throws Exception {
+        JarArchive archive = JarArchive.open(Path.of("./hutool-all-5.8.29.jar"));
+        Assertions.assertNotNull(archive.getManifest());
+        Assertions.assertTrue(archive.contains("cn/hutool/core/util/IdUtil.class"));
+        Assertions.assertNull(archive.read("cn/hutool/core/util/Missing.class"));
+
+        try (DynamicClassLoader classLoader = new DynamicClassLoader(getClass().getClassLoader())) {
+            classLoader.addJar(archive);
+            Class<?> clazz = classLoader.loadClass("cn.hutool.core.util.IdUtil");
+            Assertions.assertSame(classLoader, clazz.getClassLoader());
+            Assertions.assertFalse(((String) MethodUtils.invokeClass(clazz, "randomUUID")).isEmpty());
+            Assertions.assertEquals(archive.getUrl(), clazz.getProtectionDomain().getCodeSource().getLocation());
+            Assertions.assertThrows(ClassNotFoundException.class, () -> classLoader.loadClass("cn.hutool.core.util.Missing"));
+
+            URL resource = classLoader.getResource("META-INF/services/cn.hutool.aop.proxy.ProxyFactory");
+            Assertions.assertNotNull(resource);
+            try (InputStream inputStream = resource.openStream()) {
+                Assertions.assertTrue(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8).contains("cn.hutool.aop.proxy"));
+            }
+            Assertions.assertEquals(1, Collections.list(classLoader.getResources("META-INF/services/cn.hutool.aop.proxy.ProxyFactory")).size());
+        }
+    }
+
+    @Test
+    void testInMemoryJar(@TempDir Path directory) throws Exception {
+        byte[] jarBytes = Files.readAllBytes(Path.of("./hutool-all-5.8.29.jar"));
+        // 以未压缩方式嵌套在外层jar中，与Spring Boot可执行jar中BOOT-INF/lib下的jar相同
+        Path outerJar = directory.resolve("app.jar");
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(Files.newOutputStream(outerJar))) {
+            ZipEntry entry = new ZipEntry("BOOT-INF/lib/hutool.jar");
+            CRC32 crc = new CRC32();
+            crc.update(jarBytes);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(jarBytes.length);
+            entry.setCrc(crc.getValue());
+            zipOutputStream.putNextEntry(entry);
+            zipOutputStream.write(jarBytes);
+            zipOutputStream.closeEntry();
+        }
+
+        for (JarArchive archive : List.of(JarArchive.of("hutool.jar", jarBytes), JarArchive.open(outerJar + "!/BOOT-INF/lib/hutool.jar"))) {
+            try (DynamicClassLoader classLoader = new DynamicClassLoader(getClass().getClassLoader())) {
+                classLoader.addJar(archive);
+                Class<?> clazz = classLoader.loadClass("cn.hutool.core.util.IdUtil");
+                Assertions.assertSame(classLoader, clazz.getClassLoader());
+                Assertions.assertFalse(((String) MethodUtils.invokeClass(clazz, "randomUUID")).isEmpty());
+
+                URL resource = classLoader.getResource("META-INF/services/cn.hutool.aop.proxy.ProxyFactory");
+                Assertions.assertNotNull(resource);
+                try (InputStream inputStream = resource.openStream()) {
+                    Assertions.assertTrue(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8).contains("cn.hutool.aop.proxy"));
+                }
+            }
+        }
+        Assertions.assertThrows(LoaderRuntimeException.class, () -> JarArchive.open(outerJar + "!/BOOT-INF/lib/missing.jar"));
+
+        // ZIP64记录中超过2GB的位置不会被截断为int
+        ByteBuffer zip64 = ByteBuffer.allocate(42).order(ByteOrder.LITTLE_ENDIAN);
+        zip64.putInt(0x07064b50).putInt(0).putLong(3L << 30).putInt(1);
+        zip64.putInt(0x06054b50).putShort((short) 0).putShort((short) 0).putShort((short) -1).putShort((short) -1).putInt(-1).putInt(-1).putShort((short) 0);
+        Assertions.assertEquals("不支持超过2GB的jar或条目: memory:/zip64.jar", Assertions.assertThrows(LoaderRuntimeException.class, () -> JarArchive.of("zip64.jar", zip64.array())).getMessage());
+    }
+
+    @Test
+    void testDirectBytecode() throws Exception {
+        String javaSourceCode = """
+                package cn.wubo.loader.util;
+
+                public class TestClass36 {
+
+                    public String testMethod(String name){
+                        return String.format("Hello,%s!",name);
+                    }
+                }
+                """;
+        Map<String, JavaMemClass> javaMemClassMap = JavaBuilder.builder().useCache(false).compiler(javaSourceCode, "cn.wubo.loader.util.TestClass36").getJavaMemClassMap();
+        JavaMemClass javaMemClass = javaMemClassMap.get("cn.wubo.loader.util.TestClass36");
+        Assertions.assertTrue(javaMemClass.getBuffer().isDirect());
+        int size = javaMemClass.getSize();
+        Assertions.assertEquals(size, javaMemClass.getBytes().length);
+
+        try (DynamicClassLoader classLoader = new DynamicClassLoader(getClass().getClassLoader())) {
+            classLoader.addJavaMemClassMap(javaMemClassMap, false);
+            Class<?> clazz = classLoader.loadClass("cn.wubo.loader.util.TestClass36");
+            Assertions.assertEquals("Hello,world!", MethodUtils.invokeClass(clazz, "testMethod", "world"));
+            Assertions.assertEquals(size, classLoader.getBytecodeSize());
+        }
+        // 定义后字节码已经归还到缓冲区池
+        Assertions.assertEquals(0, javaMemClass.getSize());
+        Assertions.assertThrows(IllegalStateException.class, javaMemClass::getBytes);
+        Assertions.assertTrue(BytecodeBufferPool.getInstance().getPooledBytes() > 0);
+
+        // 关闭类加载器时释放尚未定义的类的字节码
+        JavaMemClass pending = JavaBuilder.builder().useCache(false).compiler(javaSourceCode, "cn.wubo.loader.util.TestClass36").getJavaMemClassMap().get("cn.wubo.loader.util.TestClass36");
+        DynamicClassLoader classLoader = new DynamicClassLoader(getClass().getClassLoader());
+        classLoader.addJavaMemClassMap(Map.of(pending.getClassName(), pending), false);
+        classLoader.close();
+        Assertions.assertEquals(0, classLoader.getPendingCount());
+        Assertions.assertEquals(0, pending.getSize());
+        Assertions.assertThrows(ClassNotFoundException.class, () -> classLoader.loadClass("cn.wubo.loader.util.TestClass36"));
+    }
+
+    @Test
+    void testCompilerOnceNestedClass() {
+        String javaSourceCode = """
+                package cn.wubo.loader.util;
+
+                public class TestClass37 {
+
+                    public String testMethod(String name){
+                        return new Inner().hello(name);
+                    }
+
+                    static class Inner {
+                        String hello(String name){
+                            return String.format("Hello,%s!",name);
+                        }
+                    }
+                }
+                """;
+        // compilerOnce返回时类加载器已经关闭，内部类在第一次调用时才定义
+        Class<?> clazz = LoaderUtils.compilerOnce(javaSourceCode, "cn.wubo.loader.util.TestClass37");
+        Assertions.assertEquals("Hello,world!", MethodUtils.invokeClass(clazz, "testMethod", "world"));
+    }
+
+    static class RecordAspect implements IAspect {
+
+        private final String name;
+
+        private final List<String> events;
+
+        RecordAspect(String name, List<String> events) {
+            this.name = name;
+            this.events = events;
+        }
+
+        @Override
+        public void before(Object target, Method method, Object[] args) {
+            events.add(name + ".before");
+        }
+
+        @Override
+        public void after(Object target, Method method, Object[] args, Object result) {
+            events.add(name + ".after");
+        }
+
+        @Override
+        public void afterThrow(Object target, Method method, Object[] args, Throwable cause) {
+            events.add(name + ".afterThrow");
+        }
+    }
 }
@@ -0,0 +1,193 @@
+package cn.wubo.loader.util.benchmark;
+
+import cn.wubo.loader.util.class_loader.DynamicClassLoader;
+import cn.wubo.loader.util.class_loader.JarArchive;
+import cn.wubo.loader.util.class_loader.JavaBuilder;
+import cn.wubo.loader.util.class_loader.JavaMemClass;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.tools.JavaFileObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 动态类加载器定义类、查找动态编译的类和jar中的类的耗时。
+ * 需要在项目根目录下运行，jar中的查找使用根目录下的hutool-all-5.8.29.jar。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassLoaderBenchmark {
+
+    private static final String CLASS_NAME = "cn.wubo.loader.util.ClassLoaderBenchmarkClass";
+
+    private static final String JAR_PATH = "./hutool-all-5.8.29.jar";
+
+    private static final String JAR_CLASS_NAME = "cn.hutool.core.util.IdUtil";
+
+    private final ClassLoader parent = ClassLoaderBenchmark.class.getClassLoader();
+
+    private Map<String, byte[]> classDataMap;
+
+    private DynamicClassLoader classLoader;
+
+    private DynamicClassLoader jarClassLoader;
+
+    private URL jarUrl;
+
+    private JarArchive jarArchive;
+
+    @Setup
+    public void setup() throws Exception {
+        String javaSourceCode = """
+                package cn.wubo.loader.util;
+
+                public class ClassLoaderBenchmarkClass {
+
+                    public String testMethod(String name){
+                        return name;
+                    }
+                }
+                """;
+        classDataMap = new LinkedHashMap<>();
+        for (JavaMemClass javaMemClass : JavaBuilder.builder().compiler(javaSourceCode, CLASS_NAME).getJavaMemClassMap().values()) {
+            classDataMap.put(javaMemClass.getClassName(), javaMemClass.getBytes());
+        }
+        classLoader = new DynamicClassLoader(parent);
+        classLoader.addClassMap(classDataMap);
+        jarUrl = new URL("jar:file:" + new File(JAR_PATH).getAbsolutePath() + "!/");
+        jarClassLoader = new DynamicClassLoader(parent);
+        jarClassLoader.addURL(jarUrl);
+        jarClassLoader.loadClass(JAR_CLASS_NAME);
+        jarArchive = JarArchive.open(Path.of(JAR_PATH));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        classLoader.close();
+        jarClassLoader.close();
+    }
+
+    /**
+     * 同一个类加载器不能重复定义同名的类，每次使用新的类加载器
+     */
+    @Benchmark
+    public Object addClassMap() {
+        DynamicClassLoader loader = new DynamicClassLoader(parent);
+        loader.addClassMap(classDataMap);
+        return loader;
+    }
+
+    @Benchmark
+    public Object addClassMapPreload() {
+        DynamicClassLoader loader = new DynamicClassLoader(parent);
+        loader.addClassMap(classDataMap, true);
+        return loader;
+    }
+
+    /**
+     * 编译输出写入直接内存后立即定义，与addClassMapPreload对比，每次写入新的编译结果，与javac的输出方式相同
+     */
+    @Benchmark
+    public Object addJavaMemClassMapPreload() throws IOException {
+        Map<String, JavaMemClass> javaMemClassMap = new LinkedHashMap<>();
+        for (Map.Entry<String, byte[]> entry : classDataMap.entrySet()) {
+            JavaMemClass javaMemClass = new JavaMemClass(entry.getKey(), JavaFileObject.Kind.CLASS);
+            try (OutputStream outputStream = javaMemClass.openOutputStream()) {
+                outputStream.write(entry.getValue());
+            }
+            javaMemClassMap.put(entry.getKey(), javaMemClass);
+        }
+        DynamicClassLoader loader = new DynamicClassLoader(parent);
+        loader.addJavaMemClassMap(javaMemClassMap, true);
+        return loader;
+    }
+
+    @Benchmark
+    public Class<?> loadClassHit() throws ClassNotFoundException {
+        return classLoader.loadClass(CLASS_NAME);
+    }
+
+    @Benchmark
+    public Object loadClassMiss() {
+        try {
+            return classLoader.loadClass("cn.wubo.loader.util.Missing");
+        } catch (ClassNotFoundException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Class<?> jarLookupHit() throws ClassNotFoundException {
+        return jarClassLoader.loadClass(JAR_CLASS_NAME);
+    }
+
+    @Benchmark
+    public Object jarLookupMiss() {
+        try {
+            return jarClassLoader.loadClass("cn.hutool.core.util.Missing");
+        } catch (ClassNotFoundException e) {
+            return e;
+        }
+    }
+
+    /**
+     * 新的类加载器添加jar后第一次加载类，包括打开jar、读取并定义类及其依赖的类
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Class<?> jarLookupCold() throws ClassNotFoundException, IOException {
+        try (DynamicClassLoader loader = new DynamicClassLoader(parent)) {
+            loader.addURL(jarUrl);
+            return loader.loadClass(JAR_CLASS_NAME);
+        }
+    }
+
+    /**
+     * 新的类加载器添加按包索引的jar后第一次加载类，jar只在setup中打开一次
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Class<?> jarIndexLookupCold() throws ClassNotFoundException, IOException {
+        try (DynamicClassLoader loader = new DynamicClassLoader(parent)) {
+            loader.addJar(jarArchive);
+            return loader.loadClass(JAR_CLASS_NAME);
+        }
+    }
+
+    /**
+     * 打开jar并建立包索引
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object jarIndexOpen() {
+        return JarArchive.open(Path.of(JAR_PATH));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ClassLoaderBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,64 @@
+package cn.wubo.loader.util.benchmark;
+
+import cn.wubo.loader.util.class_loader.JavaBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比JavaBuilder编译的冷路径和热路径：不使用缓存时每次都执行javac编译，使用缓存时相同源代码直接返回缓存中的字节码。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompileBenchmark {
+
+    private static final String CLASS_NAME = "cn.wubo.loader.util.CompileBenchmarkClass";
+
+    private static final String SOURCE = """
+            package cn.wubo.loader.util;
+
+            public class CompileBenchmarkClass {
+
+                public String testMethod(String name){
+                    return String.format("Hello,%s!",name);
+                }
+            }
+            """;
+
+    @Setup
+    public void setup() {
+        // 预先编译一次，热路径只测量命中缓存
+        JavaBuilder.builder().compiler(SOURCE, CLASS_NAME);
+    }
+
+    @Benchmark
+    public Map<?, ?> compileCold() {
+        return JavaBuilder.builder().useCache(false).compiler(SOURCE, CLASS_NAME).getJavaMemClassMap();
+    }
+
+    @Benchmark
+    public Map<?, ?> compileWarm() {
+        return JavaBuilder.builder().compiler(SOURCE, CLASS_NAME).getJavaMemClassMap();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CompileBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,98 @@
+package cn.wubo.loader.util.benchmark;
+
+import cn.wubo.loader.util.LoaderUtils;
+import cn.wubo.loader.util.MethodUtils;
+import cn.wubo.loader.util.SpringContextUtils;
+import cn.wubo.loader.util.method.InstanceCache;
+import cn.wubo.loader.util.method.InstanceStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MethodUtils的调用入口：按类调用（每次创建实例和单例两种实例策略）、按对象调用和按Bean名称调用。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvokeBenchmark {
+
+    private AnnotationConfigApplicationContext context;
+
+    private Class<?> prototypeClass;
+
+    private Class<?> singletonClass;
+
+    private Object target;
+
+    private String beanName;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        context = new AnnotationConfigApplicationContext(SpringContextUtils.class);
+        prototypeClass = LoaderUtils.compilerOnce(source("InvokeBenchmarkPrototype"), "cn.wubo.loader.util.InvokeBenchmarkPrototype");
+        singletonClass = LoaderUtils.compilerOnce(source("InvokeBenchmarkSingleton"), "cn.wubo.loader.util.InvokeBenchmarkSingleton");
+        InstanceCache.setStrategy(singletonClass.getName(), InstanceStrategy.SINGLETON);
+        target = prototypeClass.getConstructor().newInstance();
+        beanName = LoaderUtils.registerSingleton(prototypeClass);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Object invokeClassPrototype() {
+        return MethodUtils.invokeClass(prototypeClass, "testMethod", "world");
+    }
+
+    @Benchmark
+    public Object invokeClassSingleton() {
+        return MethodUtils.invokeClass(singletonClass, "testMethod", "world");
+    }
+
+    @Benchmark
+    public Object invokeTarget() {
+        return MethodUtils.invokeClass(target, "testMethod", "world");
+    }
+
+    @Benchmark
+    public Object invokeBean() {
+        return MethodUtils.invokeBean(beanName, "testMethod", "world");
+    }
+
+    private static String source(String simpleName) {
+        return """
+                package cn.wubo.loader.util;
+
+                public class %s {
+
+                    public String testMethod(String name){
+                        return name;
+                    }
+                }
+                """.formatted(simpleName);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(InvokeBenchmark.class.getSimpleName()).build()).run();
+    }
+}
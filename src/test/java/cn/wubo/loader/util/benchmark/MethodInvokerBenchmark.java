@@ -0,0 +1,103 @@
+package cn.wubo.loader.util.benchmark;
+
+import cn.wubo.loader.util.LoaderUtils;
+import cn.wubo.loader.util.MethodUtils;
+import cn.wubo.loader.util.method.MethodCache;
+import cn.wubo.loader.util.method.MethodInvoker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比动态类方法的几种调用方式：每次查找方法的反射调用、缓存Method的反射调用、MethodUtils、MethodInvoker和保持参数类型的MethodHandle。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MethodInvokerBenchmark {
+
+    private Object target;
+
+    private Method method;
+
+    private MethodInvoker invoker;
+
+    private MethodHandle typedHandle;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        String javaSourceCode = """
+                package cn.wubo.loader.util;
+
+                public class BenchmarkClass {
+
+                    public String testMethod(String name){
+                        return name;
+                    }
+                }
+                """;
+        Class<?> clazz = LoaderUtils.compilerOnce(javaSourceCode, "cn.wubo.loader.util.BenchmarkClass");
+        target = newInstance(clazz);
+        method = clazz.getMethod("testMethod", String.class);
+        invoker = MethodCache.getInvoker(clazz, "testMethod", String.class);
+        // 统一为(Object, String)Object，调用处可以使用invokeExact
+        typedHandle = invoker.getTypedHandle().asType(MethodType.methodType(Object.class, Object.class, String.class));
+    }
+
+    @Benchmark
+    public Object lookupAndReflect() throws Exception {
+        Method lookup = target.getClass().getDeclaredMethod("testMethod", String.class);
+        lookup.setAccessible(true);
+        return lookup.invoke(target, "world");
+    }
+
+    @Benchmark
+    public Object reflect() throws Exception {
+        return method.invoke(target, "world");
+    }
+
+    @Benchmark
+    public Object methodUtils() {
+        return MethodUtils.invokeClass(target, "testMethod", "world");
+    }
+
+    @Benchmark
+    public Object methodInvoker() throws Exception {
+        return invoker.invoke(target, "world");
+    }
+
+    @Benchmark
+    public Object typedHandle() throws Throwable {
+        return (Object) typedHandle.invokeExact(target, "world");
+    }
+
+    private static Object newInstance(Class<?> clazz) {
+        try {
+            return clazz.getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MethodInvokerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
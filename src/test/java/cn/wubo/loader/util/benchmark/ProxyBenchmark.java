@@ -0,0 +1,125 @@
+package cn.wubo.loader.util.benchmark;
+
+import cn.wubo.loader.util.MethodUtils;
+import cn.wubo.loader.util.aspect.AspectChain;
+import cn.wubo.loader.util.aspect.IAspect;
+import cn.wubo.loader.util.aspect.MethodMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.cglib.proxy.Enhancer;
+import org.springframework.cglib.proxy.MethodInterceptor;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比代理对象的创建和调用：每次新建Enhancer与缓存代理类的创建，反射调用与MethodProxy调用的分派，以及切面链中未匹配方法的直接转发。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProxyBenchmark {
+
+    private final NoopAspect aspect = new NoopAspect();
+
+    private Greeter target;
+
+    private Greeter reflectiveProxy;
+
+    private Greeter proxy;
+
+    private Greeter chainProxy;
+
+    @Setup
+    public void setup() {
+        target = new Greeter();
+        reflectiveProxy = reflectiveProxy(target);
+        proxy = MethodUtils.proxy(target, aspect);
+        chainProxy = MethodUtils.proxy(target, AspectChain.builder().aspect(MethodMatcher.nameMatches("bye"), aspect).build());
+    }
+
+    @Benchmark
+    public Object createWithEnhancer() {
+        return reflectiveProxy(target);
+    }
+
+    @Benchmark
+    public Object createCached() {
+        return MethodUtils.proxy(target, aspect);
+    }
+
+    @Benchmark
+    public Object invokeDirect() {
+        return target.hello("world");
+    }
+
+    @Benchmark
+    public Object invokeReflective() {
+        return reflectiveProxy.hello("world");
+    }
+
+    @Benchmark
+    public Object invokeMethodProxy() {
+        return proxy.hello("world");
+    }
+
+    @Benchmark
+    public Object invokeChainUnmatched() {
+        return chainProxy.hello("world");
+    }
+
+    /**
+     * 之前的实现：每次新建Enhancer，回调中通过Method.invoke调用目标对象
+     */
+    private Greeter reflectiveProxy(Greeter target) {
+        Enhancer enhancer = new Enhancer();
+        enhancer.setSuperclass(target.getClass());
+        enhancer.setCallback((MethodInterceptor) (obj, method, args, methodProxy) -> {
+            aspect.before(target, method, args);
+            Object result = method.invoke(target, args);
+            aspect.after(target, method, args, result);
+            return result;
+        });
+        return (Greeter) enhancer.create();
+    }
+
+    public static class Greeter {
+
+        public String hello(String name) {
+            return name;
+        }
+    }
+
+    public static class NoopAspect implements IAspect {
+
+        @Override
+        public void before(Object target, Method method, Object[] args) {
+        }
+
+        @Override
+        public void after(Object target, Method method, Object[] args, Object result) {
+        }
+
+        @Override
+        public void afterThrow(Object target, Method method, Object[] args, Throwable cause) {
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ProxyBenchmark.class.getSimpleName()).build()).run();
+    }
+}